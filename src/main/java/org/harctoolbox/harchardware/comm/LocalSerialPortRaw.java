@@ -71,6 +71,10 @@ public final class LocalSerialPortRaw extends LocalSerialPort implements IBytesC
         return inStream.read(buf);
     }
 
+    public int readBytes(byte[] buf, int offset, int length) throws IOException {
+        return inStream.read(buf, offset, length);
+    }
+
     public int readByte() throws IOException {
         return inStream.read();
     }
@@ -0,0 +1,280 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.comm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import org.harctoolbox.harchardware.ICommandLineDevice;
+import org.harctoolbox.harchardware.Utils;
+
+/**
+ * This a helper class, like TcpSocketChannel, for a connection to a Unix domain (local) socket,
+ * like /var/run/lirc/lircd.
+ * Unix domain socket channels are available from Java 16; since this project targets Java 8,
+ * they are accessed through reflection, and isSupported() tells whether the running JVM has them.
+ * Reads do not time out.
+ */
+public class UnixDomainSocketChannel implements ICommandLineDevice, IBytesCommand, AutoCloseable {
+
+    private static final Method addressFactory; // UnixDomainSocketAddress.of(String)
+    private static final Method channelFactory; // SocketChannel.open(ProtocolFamily)
+    private static final ProtocolFamily unixProtocolFamily;
+
+    static {
+        Method address;
+        Method channel;
+        ProtocolFamily family;
+        try {
+            address = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+            channel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+            family = StandardProtocolFamily.valueOf("UNIX");
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalArgumentException ex) {
+            address = null;
+            channel = null;
+            family = null;
+        }
+        addressFactory = address;
+        channelFactory = channel;
+        unixProtocolFamily = family;
+    }
+
+    /**
+     * @return true if the running JVM supports Unix domain socket channels.
+     */
+    public static boolean isSupported() {
+        return addressFactory != null;
+    }
+
+    private final String path;
+    private boolean verbose;
+    private SocketChannel channel = null;
+    private OutputStream outStream = null;
+    private InputStream inStream = null;
+    private BufferedReader bufferedInStream = null;
+
+    /**
+     * @param path file name of the socket.
+     * @param verbose
+     */
+    public UnixDomainSocketChannel(String path, boolean verbose) {
+        this.path = path;
+        this.verbose = verbose;
+    }
+
+    /**
+     *
+     * @throws IOException
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void connect() throws IOException {
+        if (channel != null && channel.isConnected())
+            return;
+        if (!isSupported())
+            throw new IOException("Unix domain sockets require Java 16 or later");
+
+        if (verbose)
+            System.err.println("Connecting socket to " + path);
+        try {
+            SocketAddress address = (SocketAddress) addressFactory.invoke(null, path);
+            channel = (SocketChannel) channelFactory.invoke(null, unixProtocolFamily);
+            channel.connect(address);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IOException(ex.getCause() != null ? ex.getCause() : ex);
+        } catch (UnsupportedOperationException ex) {
+            throw new IOException(ex);
+        }
+        // Not Channels.newInputStream/newOutputStream: they serialize reading and writing.
+        outStream = new ChannelOutputStream(channel);
+        inStream = new ChannelInputStream(channel);
+        bufferedInStream = new BufferedReader(new InputStreamReader(inStream, Charset.forName("US-ASCII")));
+    }
+
+    /**
+     *
+     * @param force ignored, the connection is always closed.
+     * @throws IOException
+     */
+    public void close(boolean force) throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            outStream = null;
+            inStream = null;
+            bufferedInStream = null;
+        }
+    }
+
+    public OutputStream getOut() {
+        return outStream;
+    }
+
+    public InputStream getIn() {
+        return inStream;
+    }
+
+    public BufferedReader getBufferedIn() {
+        return bufferedInStream;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean isValid() {
+        return channel != null;
+    }
+
+    /**
+     * Does nothing, reads on Unix domain sockets do not time out.
+     * @param timeout
+     */
+    @Override
+    public void setTimeout(int timeout) {
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    @Override
+    public void setDebug(int debug) {
+    }
+
+    @Override
+    public void sendString(String cmd) throws IOException {
+        sendBytes(cmd.getBytes(Charset.forName("US-ASCII")));
+    }
+
+    @Override
+    public String readString() throws IOException {
+        return readString(true);
+    }
+
+    @Override
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public String readString(boolean wait) throws IOException {
+        if (!wait && !bufferedInStream.ready()) {
+            if (verbose)
+                System.err.println("<(null)");
+            return null;
+        }
+        String line = bufferedInStream.readLine();
+        if (verbose)
+            System.err.println("<" + line);
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(true);
+    }
+
+    @Override
+    public void sendBytes(byte[] cmd) throws IOException {
+        outStream.write(cmd);
+    }
+
+    @Override
+    public byte[] readBytes(int length) throws IOException {
+        return Utils.readBytes(inStream, length);
+    }
+
+    @Override
+    public String getVersion() {
+        return null;
+    }
+
+    @Override
+    public void open() throws IOException {
+        connect();
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        return bufferedInStream.ready();
+    }
+
+    @Override
+    public void flushInput() throws IOException {
+        while (bufferedInStream.ready())
+            bufferedInStream.read();
+    }
+
+    private static class ChannelInputStream extends InputStream {
+        private final SocketChannel channel;
+
+        ChannelInputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int n = read(b, 0, 1);
+            return n < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class ChannelOutputStream extends OutputStream {
+        private final SocketChannel channel;
+
+        ChannelOutputStream(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
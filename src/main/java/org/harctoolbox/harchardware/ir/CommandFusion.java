@@ -19,8 +19,7 @@ package org.harctoolbox.harchardware.ir;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.HarcHardwareException;
@@ -57,12 +56,16 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
     private static final int PORTID = 1;
     private static final byte[] INTROBYTES = { (byte) 0xF2, (byte) PORTID, (byte) 0xF3 };
 
+    private static final byte STARTTOKEN = INTROBYTES[0];
     private static final byte MIDDLETOKEN = (byte) 0xF4;
     private static final byte ENDINGTOKEN = (byte) 0xF5;
     private static final byte TRANSMITTOKEN = (byte) 'T';
     private static final byte RECEIVETOKEN = (byte) 'R';
     private static final byte QUERYTOKEN = (byte) 'Q';
 
+    private static final int RECEIVE_BUFFER_SIZE = 1024;
+    private static final int INITIAL_FRAME_SIZE = 256;
+
     private static final String LEARNERNAME = "IRL";
     private static final String SENDCOMMAND = "SND";
     private static final String CAPTURECOMMAND = "LIR";
@@ -100,8 +103,8 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
     // 1 = T (transmitted TO IR learner) or R (reply FROM IR learner)
     // 2-4 = IRL (signifying we are communicating with an IR Learner)
     // 5-7 = The command name. See below for available commands.
-    private static Payload decode(byte[] data, Byte token) {
-        if (data == null)
+    private static Payload decode(byte[] data, int length, Byte token) {
+        if (data == null || length < INTROBYTES.length + 1 + LEARNERNAME.length() + COMMANDLENGTH + 3)
             return null;
         int index = 0;
         for (int i = 0; i < INTROBYTES.length; i++) {
@@ -125,10 +128,10 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
         if (data[index] != MIDDLETOKEN)
             return null;
         index++;
-        for (int i = data.length-2; i < data.length; i++)
+        for (int i = length-2; i < length; i++)
             if (data[i] != ENDINGTOKEN)
                 return null;
-        payload.data = new String(data, index, data.length - index - 2, Charset.forName("US-ASCII")); // possibly empty
+        payload.data = new String(data, index, length - index - 2, Charset.forName("US-ASCII")); // possibly empty
         return payload;
     }
 
@@ -161,6 +164,10 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
 
     private boolean stopRequested = false;
     private String versionString = null;
+    private final byte[] receiveBuffer = new byte[RECEIVE_BUFFER_SIZE];
+    private int receivePosition = 0;
+    private int receiveLimit = 0;
+    private byte[] frame = new byte[INITIAL_FRAME_SIZE];
 
     public CommandFusion() throws IOException {
         this(DEFAULTPORTNAME);
@@ -195,6 +202,8 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
     public void open() throws HarcHardwareException, IOException {
         try {
             super.open();
+            receivePosition = 0;
+            receiveLimit = 0;
             fetchVersion();
         } catch (IOException | HarcHardwareException ex) {
             close();
@@ -205,8 +214,8 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     private void fetchVersion() throws IOException, HarcHardwareException {
         send(encode(VERSIONCOMMAND, "", QUERYTOKEN));
-        byte[] response = readUntilTwoEndTokens();
-        Payload payload = decode(response, RECEIVETOKEN);
+        int length = readFrame();
+        Payload payload = length < 0 ? null : decode(frame, length, RECEIVETOKEN);
         if (verbose)
             System.err.println("<Received " + payload);
         if (payload == null)
@@ -253,10 +262,10 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
 
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     private Status expect(String command, String data) throws IOException {
-        byte[] response = readUntilTwoEndTokens();// serialPort.readBytes(13 + data.length());
-        if (response == null)
+        int length = readFrame();
+        if (length < 0)
             return Status.TIMEOUT;
-        Payload payload = decode(response, RECEIVETOKEN);
+        Payload payload = decode(frame, length, RECEIVETOKEN);
         if (verbose)
             System.err.println("<Received " + payload);
 
@@ -266,33 +275,52 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
                 : Status.ERROR;
     }
 
-    private byte[] readUntilTwoEndTokens() throws IOException {
-        List<Byte> data = new ArrayList<>(200);
-        int noEndingTokensFound = 0;
-        while (noEndingTokensFound < 2) {
-            if (stopRequested)
-                return null;
-            int x = serialPort.readByte();
-            if (x == -1)
-                return null;
-                //throw new IOException("EOF from CommandFusion");
-            data.add((byte) x);
-            if ((byte) x == ENDINGTOKEN)
-                noEndingTokensFound++;
-        }
-        byte[] result = new byte[data.size()];
-        int i = 0;
-        for (Byte b : data) {
-            result[i] = b;
-            i++;
+    /**
+     * Reads one frame, from the start token up to and including the two ending tokens, into frame.
+     * The serial port is read in blocks into receiveBuffer; bytes following the frame are
+     * left there for the next call. Bytes before a start token are discarded, and a start token
+     * within a frame (not possible in the ASCII payload) starts it over.
+     * @return length of the frame, or -1 on timeout, end of stream, or stopCapture().
+     * @throws IOException
+     */
+    @SuppressWarnings("ValueOfIncrementOrDecrementUsed")
+    private int readFrame() throws IOException {
+        FrameState state = FrameState.SEEKING;
+        int length = 0;
+        while (true) {
+            if (receivePosition == receiveLimit) {
+                if (stopRequested)
+                    return -1;
+                int n = serialPort.readBytes(receiveBuffer, 0, receiveBuffer.length);
+                if (n <= 0)
+                    return -1;
+                    //throw new IOException("EOF from CommandFusion");
+                receivePosition = 0;
+                receiveLimit = n;
+            }
+            byte x = receiveBuffer[receivePosition++];
+            if (x == STARTTOKEN) {
+                length = 0;
+                state = FrameState.IN_FRAME;
+            } else if (state == FrameState.SEEKING)
+                continue;
+
+            if (length == frame.length)
+                frame = Arrays.copyOf(frame, 2 * frame.length);
+            frame[length++] = x;
+            if (x == ENDINGTOKEN) {
+                if (state == FrameState.ENDING)
+                    return length;
+                state = FrameState.ENDING;
+            } else
+                state = FrameState.IN_FRAME;
         }
-        return result;
     }
 
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     private void send(byte[] buf) throws IOException {
         if (verbose) {
-            Payload payload = decode(buf, null);
+            Payload payload = decode(buf, buf.length, null);
             if (payload != null)
                 System.err.println(">Sending " + payload);
         }
@@ -353,13 +381,13 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
         return modulatedIrSequence;
     }
 
-    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    @SuppressWarnings({"UseOfSystemOutOrSystemErr", "ValueOfIncrementOrDecrementUsed"})
     private ModulatedIrSequence readCapture() throws IOException, OddSequenceLengthException, InvalidArgumentException {
         //IR Learner will send back a RIR reply with data in the format of IRCODE:<irdata>
-        byte[] response = readUntilTwoEndTokens();
-        if (response == null)
+        int length = readFrame();
+        if (length < 0)
             return null;
-        Payload payload = decode(response, RECEIVETOKEN);
+        Payload payload = decode(frame, length, RECEIVETOKEN);
         if (verbose) {
             System.err.println("<Received " + payload);
         }
@@ -374,7 +402,8 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
         if ((payload.data.length() - index) % 4 != 0)
             throw new InvalidArgumentException("Receive length erroneous");
 
-        ArrayList<Integer> durations = new ArrayList<>(payload.data.length() - index);
+        int[] durations = new int[(payload.data.length() - index) / 4 + 1];
+        int size = 0;
         boolean lastState = false;
         int accumulated = 0;
         for (int i = index; i < payload.data.length(); i += 4) {
@@ -382,19 +411,16 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
             int duration = Integer.parseInt(payload.data.substring(i + 2, i + 4), 16);
             if (lastState != state) {
                 if (accumulated > 0)
-                    durations.add(TICK * accumulated);
+                    durations[size++] = TICK * accumulated;
                 accumulated = duration;
             } else {
                 accumulated += duration;
             }
             lastState = state;
         }
-        durations.add(TICK * accumulated);
-        int[] data = new int[durations.size()];
-        for (int i = 0; i < data.length; i++)
-            data[i] = durations.get(i);
+        durations[size++] = TICK * accumulated;
 
-        return new ModulatedIrSequence(data, frequency, -1.0);
+        return new ModulatedIrSequence(Arrays.copyOf(durations, size), frequency, -1.0);
     }
 
     @Override
@@ -450,6 +476,12 @@ public class CommandFusion extends IrSerial<LocalSerialPortRaw> implements IRawI
         ERROR
     }
 
+    private static enum FrameState {
+        SEEKING,
+        IN_FRAME,
+        ENDING // one ending token seen
+    }
+
     private static class Payload {
         public String command;
         public String data;
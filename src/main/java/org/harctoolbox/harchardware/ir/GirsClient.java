@@ -22,9 +22,20 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.HarcHardwareException;
 import org.harctoolbox.harchardware.ICommandLineDevice;
@@ -70,9 +81,17 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
     private static final String SEPARATOR = " ";
     private static final int GIRS_SELFTEST_TIME = 2000;
     private static final int GIRS_R_U_THERE_TRIES = 3;
+    private static final int GIRS_PROBE_INITIAL_INTERVAL = 20;
+    private static final int GIRS_PROBE_MAX_INTERVAL = 200;
+    private static final int GIRS_POLL_INTERVAL = 2;
+    private static final int GIRS_DRAIN_QUIET_TIME = 500;
+    private static final int GIRS_TIMEOUT_CHECK_INTERVAL = 50;
 
     public static final int DEFAULT_BAUD = 115200;
     public static final int DEFAULT_PORT = 33333;
+    public static final int DEFAULT_SEND_WINDOW = 4;
+    public static final int DEFAULT_RESULT_TIMEOUT = 10000; // ms
+    private static final int MAX_UNSOLICITED_LINES = 100;
 
     private static final String DEFAULT_PORTNAME = "arduino";
 
@@ -103,8 +122,17 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
     private Integer endingTimeout = null;
     private int fallbackFrequency = (int) ModulatedIrSequence.DEFAULT_FREQUENCY;
     private boolean stopRequested = false;
-    private boolean pendingCapture = false;
+    private volatile boolean pendingCapture = false;
     private boolean hasParameters = false;
+    private int sendWindow = DEFAULT_SEND_WINDOW;
+    private int resultTimeout = DEFAULT_RESULT_TIMEOUT;
+    private final Deque<PendingCommand> pendingCommands = new ArrayDeque<>(DEFAULT_SEND_WINDOW); // sent, but not answered
+    private final BlockingQueue<String> captureResults = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> unsolicitedLines = new LinkedBlockingQueue<>();
+    private ReaderThread readerThread = null; // guarded by pendingCommands
+    private ScheduledExecutorService timeoutTimer = null; // guarded by pendingCommands
+    private boolean draining = false; // guarded by pendingCommands
+    private long lastLineTime = 0L; // guarded by pendingCommands
 
     public GirsClient(T hardware) throws HarcHardwareException, IOException {
         this.lineEnding = DEFAULT_LINEENDING;
@@ -132,7 +160,11 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
 
     @Override
     public void close() throws IOException {
+        synchronized (pendingCommands) {
+            stopReader();
+        }
         hardware.close();
+        failPendingCommands(new IOException("GirsClient closed"));
     }
 
     @Override
@@ -221,7 +253,7 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
 
     @Override
     public boolean isValid() {
-        return hardware.isValid() && version != null && modules != null && modules.contains("base");
+        return hardware.isValid() && isReading() && version != null && modules != null && modules.contains("base");
     }
 
     @SuppressWarnings("ReturnOfCollectionOrArrayField")
@@ -249,6 +281,36 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
         return useReceiveForCapture ? hasReceiveModule() : hasCaptureModule();
     }
 
+    /**
+     * @return the maximal number of pipelined send commands awaiting their answer.
+     */
+    public int getSendWindow() {
+        return sendWindow;
+    }
+
+    /**
+     * Sets the credit window of sendIrAsync, i.e., how many send commands may be written to the Girs server
+     * before the answer of the first one has arrived. Should not exceed what fits in the input buffer of the server.
+     * @param sendWindow
+     */
+    public void setSendWindow(int sendWindow) {
+        if (sendWindow < 1)
+            throw new IllegalArgumentException("sendWindow must be positive");
+        synchronized (pendingCommands) {
+            this.sendWindow = sendWindow;
+            pendingCommands.notifyAll();
+        }
+    }
+
+    /**
+     * @param resultTimeout How long, in milliseconds, capture and receive wait for their result,
+     * on top of the begin timeout of the Girs server. Also how long a command waits for its answer,
+     * counted from when the answer to the previous command arrived, on top of the duration of a signal sent.
+     */
+    public void setResultTimeout(int resultTimeout) {
+        this.resultTimeout = resultTimeout;
+    }
+
     /**
      * @param fallbackFrequency the fallbackFrequency to set
      */
@@ -263,34 +325,324 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
 
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     public synchronized boolean sendIr(IrSignal irSignal, int count) throws IOException, HarcHardwareException {
-        String payload = formatSendString(irSignal, count);
-        hardware.sendString(payload + lineEnding);
-        if (verbose)
-            System.err.println(payload);
-        String response = hardware.readString(true);
-        return response != null && response.trim().equals(OK_STRING);
+        String response = command(formatSendString(irSignal, count), duration(irSignal, count));
+        return response != null && response.equals(OK_STRING);
+    }
+
+    /**
+     * Sends an IrSignal without waiting for the answer of the Girs server.
+     * As long as less than sendWindow commands are unanswered, the send command is written immediately,
+     * otherwise the call blocks until a credit is returned by an answer. The answers are matched to the commands,
+     * in order, by the reader thread, so that the serial round trip overlaps the transmission of the previous signal.
+     * @param irSignal
+     * @param count
+     * @return Future completing with true on "OK", false on any other answer or no answer,
+     * and exceptionally if the connection fails or is closed before the answer.
+     * @throws IOException
+     * @throws HarcHardwareException
+     */
+    public CompletableFuture<Boolean> sendIrAsync(IrSignal irSignal, int count) throws IOException, HarcHardwareException {
+        return submit(formatSendString(irSignal, count), duration(irSignal, count)).thenApply(OK_STRING::equals);
+    }
+
+    public CompletableFuture<Boolean> sendIrAsync(IrSignal irSignal, int count, Transmitter transmitter) throws IOException, HarcHardwareException {
+        return sendIrAsync(irSignal, count);
+    }
+
+    private static long duration(IrSignal irSignal, int count) {
+        return Math.round(irSignal.toModulatedIrSequence(count).getTotalDuration() / 1000);
+    }
+
+    /**
+     * Writes a command, whose answer will be the next command answer delivered by the reader thread.
+     * While resynchronizing after a timeout, waits until late answers have been drained.
+     * @param duration time, in milliseconds, the command takes to execute, in addition to resultTimeout.
+     * @return Future completing with the (trimmed) answer, or null if the device did not answer in time.
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private CompletableFuture<String> submit(String command, long duration) throws IOException, HarcHardwareException {
+        PendingCommand pending = new PendingCommand(resultTimeout + duration);
+        synchronized (pendingCommands) {
+            startReader();
+            try {
+                while (true) {
+                    if (draining && System.currentTimeMillis() - lastLineTime >= GIRS_DRAIN_QUIET_TIME)
+                        draining = false;
+                    if (!draining && pendingCommands.size() < sendWindow)
+                        break;
+                    pendingCommands.wait(draining ? GIRS_DRAIN_QUIET_TIME : 0);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException(ex);
+            }
+            // Registered and written while holding the lock, so that the order of the queue is the order on the wire.
+            pending.start = System.currentTimeMillis();
+            pendingCommands.addLast(pending);
+            try {
+                hardware.sendString(command + lineEnding);
+            } catch (IOException | HarcHardwareException ex) {
+                pendingCommands.removeLastOccurrence(pending);
+                throw ex;
+            }
+            if (verbose)
+                System.err.println(command);
+        }
+        return pending.future;
+    }
+
+    private String command(String command) throws IOException, HarcHardwareException {
+        return command(command, 0L);
+    }
+
+    private String command(String command, long duration) throws IOException, HarcHardwareException {
+        try {
+            return submit(command, duration).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Issues a capture or receive command, unless it is already pending, and waits for its result.
+     * @return result line, or null if it did not arrive in time; the command is then still pending.
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private String awaitResult(String command) throws IOException, HarcHardwareException {
+        if (!pendingCapture) {
+            synchronized (pendingCommands) {
+                startReader();
+                captureResults.clear();
+                pendingCapture = true;
+                hardware.sendString(command + lineEnding);
+                if (verbose)
+                    System.err.println(command);
+            }
+        }
+        try {
+            String result = captureResults.poll((beginTimeout != null ? beginTimeout : 0) + resultTimeout, TimeUnit.MILLISECONDS);
+            if (result != null)
+                pendingCapture = false;
+            return result;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    // Call only holding the lock of pendingCommands.
+    private void startReader() {
+        if (readerThread == null) {
+            readerThread = new ReaderThread();
+            readerThread.start();
+        }
+        // The reader may block indefinitely (the serial port has no read timeout by default),
+        // so the deadlines of the pending commands are checked by a timer of its own.
+        if (timeoutTimer == null) {
+            timeoutTimer = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "GirsClient-timeout");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timeoutTimer.scheduleAtFixedRate(this::checkTimeout, GIRS_TIMEOUT_CHECK_INTERVAL, GIRS_TIMEOUT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Call only holding the lock of pendingCommands.
+    private void stopReader() {
+        readerThread = null;
+        if (timeoutTimer != null) {
+            timeoutTimer.shutdownNow();
+            timeoutTimer = null;
+        }
+    }
+
+    private boolean isReading() {
+        synchronized (pendingCommands) {
+            return readerThread != null;
+        }
+    }
+
+    private void failPendingCommands(IOException ex) {
+        synchronized (pendingCommands) {
+            while (!pendingCommands.isEmpty())
+                pendingCommands.pollFirst().future.completeExceptionally(ex);
+            pendingCommands.notifyAll();
+        }
+    }
+
+    /**
+     * Tells whether a line is the result of a capture or receive command, rather than the answer to another command.
+     */
+    private static boolean isCaptureResult(String line, boolean commandPending) {
+        if (line.startsWith(TIMEOUT_STRING) || line.startsWith("null") || line.startsWith("f="))
+            return true;
+        if (line.toUpperCase(Locale.US).startsWith(ERROR_STRING))
+            return !commandPending;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (!(Character.isDigit(ch) || ch == '+' || ch == '-' || ch == ' '))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sorts an incoming line to its consumer: the result of a pending capture or receive,
+     * the answer to the oldest pending command, or, if neither, the lines read by readString.
+     */
+    private void dispatch(String line) {
+        PendingCommand pending = null;
+        synchronized (pendingCommands) {
+            if (pendingCapture && isCaptureResult(line, !pendingCommands.isEmpty())) {
+                captureResults.add(line);
+                return;
+            }
+            if (draining) {
+                lastLineTime = System.currentTimeMillis();
+                logger.log(Level.FINE, "Late answer from Girs server discarded: {0}", line);
+                return;
+            }
+            if (!pendingCommands.isEmpty()) {
+                pending = pendingCommands.pollFirst();
+                if (!pendingCommands.isEmpty())
+                    pendingCommands.peekFirst().restart(System.currentTimeMillis());
+                pendingCommands.notifyAll(); // one credit returned
+            }
+        }
+        if (pending != null)
+            pending.future.complete(line);
+        else {
+            if (unsolicitedLines.size() >= MAX_UNSOLICITED_LINES)
+                unsolicitedLines.poll();
+            unsolicitedLines.add(line);
+        }
+    }
+
+    /**
+     * If the oldest pending command has not been answered in time, it cannot be known which
+     * of the answers still to come belongs to which command. So all pending commands are given up,
+     * and answers are discarded until the Girs server has been silent for a while.
+     * Called periodically by the timeout timer, and by the reader thread whenever a read returns.
+     */
+    private void checkTimeout() {
+        List<PendingCommand> expired;
+        synchronized (pendingCommands) {
+            long now = System.currentTimeMillis();
+            PendingCommand oldest = pendingCommands.peekFirst();
+            if (oldest == null || !oldest.isOverdue(now))
+                return;
+            expired = new ArrayList<>(pendingCommands);
+            pendingCommands.clear();
+            draining = true;
+            lastLineTime = now;
+            pendingCommands.notifyAll();
+        }
+        logger.log(Level.WARNING, "Girs server did not answer in time, {0} command(s) given up", expired.size());
+        for (PendingCommand pending : expired)
+            pending.future.complete(null);
+    }
+
+    /**
+     * The Girs server has been silent for a read timeout: no more late answers to expect.
+     */
+    private void endDraining() {
+        synchronized (pendingCommands) {
+            if (draining) {
+                draining = false;
+                pendingCommands.notifyAll();
+            }
+        }
     }
 
     @Override
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     public void open() throws IOException, HarcHardwareException {
         hardware.open();
-        waitFor(OK_STRING, lineEnding, /*delay*/ GIRS_SELFTEST_TIME, /* tries = */ GIRS_R_U_THERE_TRIES);
-        hardware.sendString(VERSION_COMMAND + lineEnding);
-        String string = hardware.readString(true);
-        if (string == null)
-            throw new HarcHardwareException("Error reading version");
-        version = string.trim();
-        if (verbose)
+        handshake(GIRS_SELFTEST_TIME * GIRS_R_U_THERE_TRIES);
+        if (verbose) {
             System.err.println(VERSION_COMMAND + " returned '" + version + "'.");
-        hardware.sendString(MODULES_COMMAND + lineEnding);
-        String line = hardware.readString(true);
-        if (verbose)
-            System.err.println(VERSION_COMMAND + " returned '" + version + "'.");
-        if (line != null)
-            modules = Arrays.asList(line.toLowerCase(Locale.US).split("\\s+"));
+            System.err.println(MODULES_COMMAND + " returned '" + String.join(" ", modules) + "'.");
+        }
         setUseReceiveForCapture();
         hasParameters =  modules.contains(PARAMETERS_MODULENAME);
+        synchronized (pendingCommands) {
+            startReader();
+        }
+    }
+
+    /**
+     * Finds out when the Girs server is up, and at the same time gets its version and modules.
+     * Instead of sleeping a fixed time for the (possible) reset after opening the port,
+     * the version and modules commands are sent together, and repeated with short, growing intervals,
+     * until a plausible pair of answers arrives. Banners and junk from a booting board are discarded.
+     *
+     * @param maxTime Give up after this many milliseconds.
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private void handshake(int maxTime) throws IOException, HarcHardwareException {
+        long deadline = System.currentTimeMillis() + maxTime;
+        int interval = GIRS_PROBE_INITIAL_INTERVAL;
+        flushIn();
+        while (System.currentTimeMillis() < deadline) {
+            hardware.sendString(VERSION_COMMAND + lineEnding + MODULES_COMMAND + lineEnding);
+            String versionLine = pollLine(interval);
+            String modulesLine = versionLine != null ? pollLine(interval) : null;
+            if (versionLine != null && modulesLine != null) {
+                List<String> moduleList = Arrays.asList(modulesLine.toLowerCase(Locale.US).split("\\s+"));
+                String upperVersion = versionLine.toUpperCase(Locale.US);
+                if (moduleList.contains("base") && !upperVersion.startsWith(OK_STRING) && !upperVersion.startsWith(ERROR_STRING)) {
+                    version = versionLine;
+                    modules = moduleList;
+                    // Late answers to earlier probes must not be taken as answers to later commands.
+                    while (pollLine(interval) != null)
+                        ;
+                    return;
+                }
+                if (verbose)
+                    System.err.println("GirsClient.handshake: ignored '" + versionLine + "', '" + modulesLine + "'.");
+            }
+            // Not there yet, or out of sync; start afresh.
+            flushIn();
+            interval = Math.min(2 * interval, GIRS_PROBE_MAX_INTERVAL);
+        }
+        throw new HarcHardwareException("Hardware not responding");
+    }
+
+    /**
+     * Returns the next non-empty line, trimmed, if it arrives within timeout milliseconds, otherwise null.
+     */
+    @SuppressWarnings("SleepWhileInLoop")
+    private String pollLine(int timeout) throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            String line;
+            try {
+                line = hardware.readString(false);
+            } catch (IOException ex) {
+                // as in flushIn
+                line = null;
+            }
+            if (line != null) {
+                line = line.trim();
+                if (!line.isEmpty())
+                    return line;
+            } else {
+                if (System.currentTimeMillis() >= deadline)
+                    return null;
+                try {
+                    Thread.sleep(GIRS_POLL_INTERVAL);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(ex);
+                }
+            }
+        }
     }
 
     @SuppressWarnings("SleepWhileInLoop")
@@ -382,18 +734,12 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
             return null;
         if (!isValid())
             throw new HarcHardwareException("Port not initialized");
-        if (!pendingCapture) {
-            hardware.sendString(CAPTURE_COMMAND + lineEnding);
-            pendingCapture = true;
-        }
         ModulatedIrSequence seq = null;
         try {
-            String str = hardware.readString(true);
-            pendingCapture = false;
+            String str = awaitResult(CAPTURE_COMMAND);
             if (str == null || str.length() == 0 || str.startsWith("null") || str.startsWith(TIMEOUT_STRING))
                 return null;
 
-            str = str.trim();
             if (str.toUpperCase(Locale.US).startsWith(ERROR_STRING))
                 throw new HarcHardwareException("Girs server does not support capture.");
 
@@ -406,12 +752,6 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
                 str = str.substring(indx + 1);
             }
             seq = new ModulatedIrSequence(new IrSequence(str), frequency, -1.0);
-        } catch (SocketTimeoutException ex) {
-            return null;
-        } catch (IOException ex) {
-            if (ex.getMessage().equals("Underlying input stream returned zero bytes")) //RXTX timeout
-                return null;
-            throw ex;
         } catch (OddSequenceLengthException ex) {
             throw new HarcHardwareException(ex);
         }
@@ -430,28 +770,13 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
             return null;
         if (!isValid())
             throw new HarcHardwareException("Port not initialized");
-        if (!pendingCapture) {
-            hardware.sendString(RECEIVE_COMMAND + lineEnding);
-            pendingCapture = true;
-        }
-
         IrSequence seq = null;
         try {
-            //open();
-            String str = hardware.readString(true);
-            pendingCapture = false;
+            String str = awaitResult(RECEIVE_COMMAND);
             if (str == null || str.length() == 0 || str.startsWith("null") || str.startsWith(TIMEOUT_STRING))
                 return null;
 
-            str = str.trim();
-
             seq = new IrSequence(str);
-        } catch (SocketTimeoutException ex) {
-            return null;
-        } catch (IOException ex) {
-            if (ex.getMessage().equals("Underlying input stream returned zero bytes")) //RXTX timeout
-                return null;
-            throw ex;
         } catch (OddSequenceLengthException ex) {
             throw new HarcHardwareException(ex);
         }
@@ -472,27 +797,45 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
 
     @Override
     public void sendString(String cmd) throws IOException, HarcHardwareException {
-        hardware.sendString(cmd);
+        synchronized (pendingCommands) {
+            hardware.sendString(cmd);
+        }
     }
 
     @Override
     public String readString() throws IOException {
-        return hardware.readString();
+        return readString(true);
     }
 
+    /**
+     * Reads a line. When open, these are the lines that the reader thread could not attribute to any pending command.
+     * @param wait
+     * @return
+     * @throws IOException
+     */
     @Override
     public String readString(boolean wait) throws IOException {
-        return hardware.readString(wait);
+        if (!isReading())
+            return hardware.readString(wait);
+        try {
+            return wait ? unsolicitedLines.poll(resultTimeout, TimeUnit.MILLISECONDS) : unsolicitedLines.poll();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
     }
 
     @Override
     public boolean ready() throws IOException {
-        return hardware.ready();
+        return isReading() ? !unsolicitedLines.isEmpty() : hardware.ready();
     }
 
     @Override
     public void flushInput() throws IOException {
-        hardware.flushInput();
+        if (isReading())
+            unsolicitedLines.clear();
+        else
+            hardware.flushInput();
     }
 
     @Override
@@ -549,19 +892,16 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
     }
 
     private void sendStringWaitOk(String line) throws IOException, HarcHardwareException {
-        hardware.sendString(line + lineEnding);
-        String answer = readString(true);
+        String answer = command(line);
         if (answer == null)
             throw new HarcHardwareException("No \"" + OK_STRING + "\" received.");
-        answer = answer.trim();
         if (!answer.startsWith(OK_STRING))
             throw new HarcHardwareException("No \"" + OK_STRING + "\" received, instead \"" + answer + "\".");
     }
 
     public long getParameter(String parameterName) throws IOException, HarcHardwareException {
         if (hasParameters) {
-            hardware.sendString("parameter " + parameterName + lineEnding);
-            String answer = readString(true);
+            String answer = command(SET_PARAMETER_COMMAND + SEPARATOR + parameterName);
             if (answer == null)
                 throw new HarcHardwareException("No answer received.");
             return Long.parseLong(answer.split("=")[1]);
@@ -571,8 +911,7 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
 
     public void setParameter(String parameterName, int newValue) throws IOException, HarcHardwareException {
         if (hasParameters) {
-            hardware.sendString(SET_PARAMETER_COMMAND + SEPARATOR + parameterName + SEPARATOR + Integer.toString(newValue) + lineEnding);
-            String answer = readString(true);
+            String answer = command(SET_PARAMETER_COMMAND + SEPARATOR + parameterName + SEPARATOR + Integer.toString(newValue));
             if (answer == null)
                 throw new HarcHardwareException("No answer received.");
             if (!answer.equals(parameterName + "=" + Integer.toString(newValue)))
@@ -580,4 +919,79 @@ public class GirsClient<T extends ICommandLineDevice & IHarcHardware>  implement
         } else
             throw new HarcHardwareException("parameters not implemented.");
     }
+
+    private static class PendingCommand {
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final long timeout;
+        private long start = 0L; // when written, or when the previous command was answered, if later
+
+        PendingCommand(long timeout) {
+            this.timeout = timeout;
+        }
+
+        private void restart(long now) {
+            start = Math.max(start, now);
+        }
+
+        private boolean isOverdue(long now) {
+            return now - start > timeout;
+        }
+    }
+
+    /**
+     * Reads everything the Girs server says, and lets dispatch sort it,
+     * so that commands can be sent while a capture or receive is pending.
+     */
+    private class ReaderThread extends Thread {
+
+        ReaderThread() {
+            super("GirsClient-reader");
+            setDaemon(true);
+        }
+
+        private boolean isCurrent() {
+            synchronized (pendingCommands) {
+                return readerThread == this;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (isCurrent()) {
+                String line;
+                try {
+                    line = hardware.readString(true);
+                } catch (SocketTimeoutException ex) {
+                    line = null;
+                } catch (IOException ex) {
+                    quit(ex);
+                    return;
+                }
+                if (line == null && !(hardware instanceof LocalSerialPortBuffered)) {
+                    // Only the serial port signals its read timeout by null; for a stream, it is the end.
+                    quit(new IOException("EOF"));
+                    return;
+                }
+                if (line == null) {
+                    endDraining();
+                    checkTimeout();
+                    continue;
+                }
+                checkTimeout(); // an answer arriving too late is not credited to any command
+                line = line.trim();
+                if (!line.isEmpty())
+                    dispatch(line);
+            }
+        }
+
+        private void quit(IOException ex) {
+            synchronized (pendingCommands) {
+                if (readerThread != this)
+                    return; // closed
+                stopReader();
+            }
+            logger.log(Level.WARNING, "Reading from Girs server failed: {0}", ex.getMessage());
+            failPendingCommands(ex);
+        }
+    }
 }
@@ -20,15 +20,28 @@ package org.harctoolbox.harchardware.ir;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.ICommandLineDevice;
@@ -50,16 +63,19 @@ import org.harctoolbox.irp.IrpUtils;
  * according to <a href="https://www.globalcache.com/files/docs/API-GC-UnifiedTCPv1.1.pdf">the official API documentation</a>.
  * This covers the models GC-100, iTach, Flex and Global Connect.
  */
-public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop, ITransmitter, ICapture, IWeb {
+public class GlobalCache implements IHarcHardware, IRawIrSender, IRawIrSenderRepeat, IIrSenderStop, ITransmitter, ICapture, IWeb {
 
     private static final Logger logger = Logger.getLogger(GlobalCache.class.getName());
 
-    private final static int smallDelay = 10; // ms
     private final static int gcPort = 4998;
     private final static int gcFirstSerialPort = 4999;
     public  final static String DEFAULT_IP = "192.168.1.70";
     public  final static int defaultGlobalCachePort = 1;
     public  final static String sendIrPrefix = "sendir";
+    private final static String completeIrPrefix = "completeir";
+    private final static String learnerEnabled = "IR Learner Enabled";
+    private final static int sendIndexModulus = 65536;
+    private final static int repeatHoldover = 250; // ms of signal queued in the GlobalCache by sendIrRepeat
     private final static int defaultSocketTimeout = 2000;
     private final static int beaconTimeout = 60000; // Selected for GC-100, somewhat long for iTach[Flex]
     private final static int invalidDevice = -1;
@@ -91,43 +107,6 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         return (c >= connectorMin) && (c <= connectorsPerModule + connectorMin - 1);
     }
 
-    private static String gcJoiner(int[] array) {
-        StringBuilder result = new StringBuilder(32);
-        for (int i = 0; i < array.length; i++) {
-            result.append(",").append(array[i]);
-        }
-        return result.toString();
-    }
-
-    private static String gcCompressedJoiner(int[]intro, int[]repeat) {
-        Map<String, Character> index = new LinkedHashMap<>(32);
-        return gcCompressedJoiner(intro, index) + gcCompressedJoiner(repeat, index);
-    }
-
-    private static String gcCompressedJoiner(int seq[], Map<String, Character> index) {
-        StringBuilder result = new StringBuilder(32);
-        for (int i = 0; i < seq.length / 2; i++) {
-            String key = "," + seq[2 * i] + "," + seq[2 * i + 1];
-            if (index.containsKey(key))
-                result.append(index.get(key));
-            else {
-                if (index.size() < maxCompressedLetters) {
-                    Character letter = (char) ('A' + (char) index.size());
-                    index.put(key, letter);
-                }
-                result.append(key);
-            }
-        }
-        return result.toString();
-    }
-
-    private static String globalCacheString(IrSignal code, int count, boolean compressed) {
-        int[] intro = code.getIntroPulses();
-        int[] repeat = code.getRepeatPulses();
-        return (Long.toString(Math.round(code.getFrequency()))) + "," + count + "," + (1 + intro.length)
-                + (compressed ? gcCompressedJoiner(intro, repeat) : (gcJoiner(intro) + gcJoiner(repeat)));
-    }
-
     private static String transmitterAddress(int module, int connector) throws NoSuchTransmitterException {
         if (connector < connectorMin || connector > connectorsPerModule + connectorMin - 1)
             throw new NoSuchTransmitterException("" + module + ":" + connector);
@@ -151,8 +130,7 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
      * @throws NoSuchTransmitterException
      */
     public static String sendIrString(IrSignal code, int count, int module, int connector, int sendIndex, boolean compressed) throws NoSuchTransmitterException {
-        return sendIrPrefix + "," + transmitterAddress(module, connector)
-                + "," + (sendIndex % 65536) + "," + globalCacheString(code, count, compressed);
+        return new GlobalCacheEncoder().encode(code, count, module, connector, sendIndex, compressed).toString();
     }
 
     public static AmxBeaconListener.Node listenBeacon(int timeout) {
@@ -171,32 +149,36 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
 
     /**
      * Parses a string intended as command to a GlobalCache and return it as a IrSignal.
-     * Presently only the uncompressed form is parsed.
+     * Both the uncompressed and the compressed form (letters A to O denoting previously seen duration pairs) are understood.
+     * The string is scanned once, character by character.
+     * Lines not starting with sendir, like completeir, return null,
+     * so that learner output and logs can be fed line by line.
      *
      * @param gcString
      * @return IrSignal representing the signal, with begin and repeat part.
      * @throws org.harctoolbox.ircore.InvalidArgumentException
      */
     public static IrSignal parse(String gcString) throws InvalidArgumentException {
-        String[] chunks = gcString.trim().split(",");
-        if (chunks.length < 6)
+        SendIrScanner scanner = new SendIrScanner(gcString);
+        if (!scanner.skipPrefix())
             return null;
-        int index = 0;
-        if (!chunks[index].trim().equals(sendIrPrefix))
+
+        // module:connector and send index, discard
+        if (!scanner.skipField() || !scanner.skipField())
+            return null;
+
+        int frequency = scanner.nextHeaderNumber();
+        int count = scanner.nextHeaderNumber(); // number repetitions, discard
+        int repIndex = scanner.nextHeaderNumber();
+        if (frequency < 0 || count < 0 || repIndex < 0)
             return null;
-        index++;
-
-        index++; // module, discard
-        index++; // send index, discard
-        int frequency = Integer.parseInt(chunks[index].trim());
-        index++;
-        index++; // number repetitions, discard
-        int repIndex = Integer.parseInt(chunks[index].trim());
-        index++;
-        int[] durations = new int[chunks.length - index];
+        if (frequency == 0)
+            throw new InvalidArgumentException("Zero frequency in sendir");
+
+        int[] durations = scanner.durations();
         double T = 1000000f / (double) frequency; // period time in micro seconds
-        for (int i = 0; i < chunks.length - index; i++)
-            durations[i] = (int) Math.round(Integer.parseInt(chunks[i + index]) * T);
+        for (int i = 0; i < durations.length; i++)
+            durations[i] = (int) Math.round(durations[i] * T);
 
         return new IrSignal(durations, repIndex - 1, durations.length - repIndex + 1, frequency);
     }
@@ -460,7 +442,73 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
      * The Global Cache IR index.
      * Should turn around at 65536, see GC API docs.
      */
-    private int sendIndex;
+    private final AtomicInteger sendIndex = new AtomicInteger(0);
+
+    /**
+     * Serializes writes to the control socket, independently of the (possibly waiting) synchronous commands.
+     */
+    private final Object outputLock = new Object();
+
+    /**
+     * Number of commands written to the control socket; guarded by outputLock.
+     * Since the GlobalCache answers in the order the commands were written, it tells which commands an answer may belong to.
+     */
+    private long writeCount = 0L;
+
+    /**
+     * Renders sendir commands; guarded by outputLock.
+     */
+    private final GlobalCacheEncoder encoder = new GlobalCacheEncoder();
+
+    /**
+     * Asynchronous sendir commands, indexed by their ID, waiting for their completeir.
+     */
+    private final Map<Integer, PendingIrSend> pendingIrSends = new LinkedHashMap<>(8);
+
+    /**
+     * Replies to the synchronous command presently executing in sendCommand.
+     */
+    private final BlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+    /**
+     * True while sendCommand waits for replies.
+     */
+    private volatile boolean awaitingReplies = false;
+
+    /**
+     * Connector addressed by the synchronous command waiting for its first reply, or null.
+     */
+    private volatile String syncAddress = null;
+
+    /**
+     * Write number of the synchronous command presently, or last, executing.
+     */
+    private volatile long syncSequence = 0L;
+
+    /**
+     * All commands written up to this number have been processed by the GlobalCache,
+     * so that sendirs written before cannot be answered by an error any longer.
+     */
+    private volatile long confirmedSequence = 0L;
+
+    private final List<ResponseListener> responseListeners = new CopyOnWriteArrayList<>();
+
+    private final List<ResponseListener> completionListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Reads, and dispatches, everything arriving on the control socket while open.
+     */
+    private volatile ReplyReaderThread replyReaderThread = null;
+
+    /**
+     * Ongoing sendIrRepeat transmissions, indexed by module:connector.
+     */
+    private final Map<String, RepeatSession> repeatSessions = new LinkedHashMap<>(4);
+
+    /**
+     * Resends the sendir commands of sendIrRepeat; created when first needed.
+     */
+    private ScheduledExecutorService repeatExecutor = null;
 
     public GlobalCache(InetAddress inetAddress, boolean verbose, Integer timeout, boolean compressed) throws IOException {
         this.timeout = timeout != null ? timeout : defaultSocketTimeout;
@@ -531,6 +579,21 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         return serialPorts[portIndex];
     }
 
+    /**
+     * Returns a streaming bridge for a serial port of the GlobalCache, see GlobalCacheSerialBridge.
+     * It connects on its own, so the port should not be used through getSerialPort at the same time.
+     * @param portNumber 1-based port  number, i.e. use 1 for first, not 0.
+     * @return GlobalCacheSerialBridge, not yet active.
+     * @throws NoSuchTransmitterException
+     */
+    public GlobalCacheSerialBridge newSerialBridge(int portNumber) throws NoSuchTransmitterException {
+        int portIndex = portNumber - 1;
+        if (portIndex < 0 || portIndex > serialPorts.length - 1)
+            throw new NoSuchTransmitterException(Integer.toString(portNumber));
+
+        return new GlobalCacheSerialBridge(inetAddress, gcFirstSerialPort + portIndex, timeout);
+    }
+
     @Override
     public GlobalCacheIrTransmitter getTransmitter(String str) throws NoSuchTransmitterException {
         if (str == null || str.isEmpty())
@@ -570,7 +633,7 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         return result;
     }
 
-    private GlobalCacheIrTransmitter newGlobalCacheIrTransmitter(Transmitter trans) {
+    GlobalCacheIrTransmitter newGlobalCacheIrTransmitter(Transmitter trans) {
          GlobalCacheIrTransmitter tr = trans == null
                  ? new GlobalCacheIrTransmitter()
                  : (GlobalCacheIrTransmitter) trans;
@@ -596,7 +659,10 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
 
         tcpSocketChannel = new TcpSocketChannel(this.hostIp, gcPort, timeout,
                 verbose, TcpSocketPort.ConnectionMode.keepAlive);
-        getdevicesResult = sendCommand("getdevices", -1);
+        tcpSocketChannel.connect();
+        replyReaderThread = new ReplyReaderThread(tcpSocketChannel);
+        replyReaderThread.start();
+        getdevicesResult = sendCommand("getdevices", "endlistdevices");
 
         irModules = getIrModules();
         firstIrModule = irModules.isEmpty() ? invalidDevice : irModules.get(0);
@@ -613,10 +679,17 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
 
     @Override
     public synchronized void close() throws IOException {
+        ReplyReaderThread reader = replyReaderThread;
+        replyReaderThread = null;
+        if (reader != null)
+            reader.interrupt();
         if (tcpSocketChannel != null) {
             tcpSocketChannel.close(true);
             tcpSocketChannel = null;
         }
+        cancelRepeats();
+        failPendingIrSends(new IOException("GlobalCache " + hostIp + " closed"));
+        replies.clear();
         getdevicesResult = null;
     }
 
@@ -633,63 +706,267 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         this.compressed = compressed;
     }
 
+    /**
+     * Registers a listener for responses not claimed by any command issued through this object,
+     * like sensornotify and statechange, or completeir replies arriving after their command timed out.
+     * The listener is invoked from the reader thread, and should return quickly.
+     * @param listener
+     */
+    public void addResponseListener(ResponseListener listener) {
+        responseListeners.add(listener);
+    }
+
+    public void removeResponseListener(ResponseListener listener) {
+        responseListeners.remove(listener);
+    }
+
+    /**
+     * Registers a listener for all completeir responses, also those finishing a command issued through this object,
+     * i.e., for every connector becoming free. It is invoked from the reader thread, after the command has been finished.
+     * @param listener
+     */
+    public void addCompletionListener(ResponseListener listener) {
+        completionListeners.add(listener);
+    }
+
+    public void removeCompletionListener(ResponseListener listener) {
+        completionListeners.remove(listener);
+    }
+
+    /**
+     * @param transmitter
+     * @return true if a sendir issued through this object is outstanding on the connector,
+     * so that a completeir for it can be expected.
+     */
+    boolean isTransmitting(GlobalCacheIrTransmitter transmitter) {
+        synchronized (pendingIrSends) {
+            for (PendingIrSend pending : pendingIrSends.values())
+                if (pending.module == transmitter.module && pending.connector == transmitter.port)
+                    return true;
+            return false;
+        }
+    }
+
     @SuppressWarnings({"SleepWhileHoldingLock", "UseOfSystemOutOrSystemErr"})
     private synchronized String[] sendCommand(String cmd, int noLines, int delay, String expectedFirstLine) throws IOException {
         if (verbose && cmd != null)
             System.err.println("Sending command \"" + cmd + "\" to GlobalCache (" + hostIp + ")");
 
-        tcpSocketChannel.connect();
-        if (noLines != 0)
-            while (tcpSocketChannel.getBufferedIn().ready()) {
-                tcpSocketChannel.readString();
-            }
-
-        if (cmd != null) {
-            tcpSocketChannel.sendString(cmd + '\r');
-
-            if (delay > 0) {
-                try {
-                    Thread.sleep(delay);
-                } catch (InterruptedException ex) {
+        awaitingReplies = noLines > 0;
+        try {
+            if (cmd != null) {
+                replies.clear(); // late replies to commands that timed out
+                writeSyncCommand(cmd, noLines > 0);
+
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException ex) {
+                    }
                 }
             }
-        }
-        String[] result;
-        if (noLines >= 0) {
-            result = new String[noLines];
+            String[] result = new String[noLines];
             for (int i = 0; i < noLines; i++) {
-                result[i] = tcpSocketChannel.readString();// throws SocketTimeoutException after so_timeout
-               if (i == 0 && expectedFirstLine != null)
+                result[i] = readReply(); // throws SocketTimeoutException after timeout
+                if (i == 0 && expectedFirstLine != null)
                     if (!result[0].startsWith(expectedFirstLine)) {
-                        logger.log(Level.WARNING, "Expected \"{0}\", returning immediately.", expectedFirstLine);
+                        logger.log(Level.FINE, "Expected \"{0}\", returning immediately.", expectedFirstLine);
                         break;
                     }
             }
-        } else {
+            return result;
+        } finally {
+            awaitingReplies = false;
+        }
+    }
+
+    /**
+     * Sends a command answered by several lines, and collects the lines up to, and including, lastLine.
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private synchronized String[] sendCommand(String cmd, String lastLine) throws IOException {
+        if (verbose)
+            System.err.println("Sending command \"" + cmd + "\" to GlobalCache (" + hostIp + ")");
+
+        awaitingReplies = true;
+        try {
+            replies.clear();
+            writeSyncCommand(cmd, true);
             List<String> array = new ArrayList<>(8);
-            String lineRead = tcpSocketChannel.readString(); // throws SocketTimeoutException after so_timeout
-            if (lineRead != null) {
-                array.add(lineRead);
-                while (tcpSocketChannel.getBufferedIn().ready()) {
-                    String resp = tcpSocketChannel.readString();
-                    array.add(resp);
+            String line;
+            do {
+                line = readReply(); // throws SocketTimeoutException after timeout
+                array.add(line);
+            } while (!line.equals(lastLine));
+            return array.toArray(new String[0]);
+        } finally {
+            awaitingReplies = false;
+        }
+    }
+
+    private String sendCommand(String cmd) throws IOException {
+        return sendCommand(cmd, 1, 0, null)[0];
+    }
+
+    /**
+     * Sends a command answered by one line, for GlobalCacheProxy.
+     * @param cmd without line terminator.
+     * @return the reply.
+     * @throws IOException
+     */
+    String sendCommandLine(String cmd) throws IOException {
+        return sendCommand(cmd);
+    }
+
+    private void writeCommand(String cmd) throws IOException {
+        synchronized (outputLock) {
+            tcpSocketChannel.sendString(cmd + '\r');
+        }
+    }
+
+    /**
+     * Writes the command of sendCommand. If it addresses a connector with sendirs that may still be answered by an error,
+     * getversion is sent, and answered, first, so that an ERR for the connector unambiguously belongs to the command.
+     * @param cmd
+     * @param probe if false, no reply is expected, so no ERR needs to be told apart.
+     */
+    private void writeSyncCommand(String cmd, boolean probe) throws IOException {
+        String address = commandAddress(cmd);
+        while (true) {
+            synchronized (outputLock) {
+                if (!probe || address == null || !mayFailIr(address)) {
+                    syncAddress = address;
+                    syncSequence = ++writeCount;
+                    writeCommand(cmd);
+                    return;
                 }
+                logger.log(Level.FINE, "Sendir outstanding on {0}, synchronizing before \"{1}\"", new Object[]{address, cmd});
+                syncAddress = null;
+                syncSequence = ++writeCount;
+                writeCommand("getversion");
             }
-            result = array.toArray(new String[0]);
+            readReply(); // confirms the sendirs written before
         }
-        tcpSocketChannel.close(false);
-        return result;
     }
 
-    private String sendCommand(String cmd) throws IOException {
-        return sendCommand(cmd, 1, smallDelay, null)[0];
+    /**
+     * @return module:connector of the command, or null if it does not address a connector.
+     */
+    private static String commandAddress(String cmd) {
+        String[] chunks = cmd.split(",", 3);
+        return chunks.length >= 2 && chunks[1].matches("\\d+:\\d+") ? chunks[1] : null;
+    }
+
+    /**
+     * @return true if a sendir on the connector has been written, but may still be answered by an error.
+     */
+    private boolean mayFailIr(String address) {
+        synchronized (pendingIrSends) {
+            for (PendingIrSend pending : pendingIrSends.values())
+                if (pending.getAddress().equals(address) && pending.sequence > confirmedSequence && pending.sequence != Long.MAX_VALUE)
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Marks the sendir as written now; to be called holding outputLock, before writing it.
+     */
+    private void written(PendingIrSend pending) {
+        pending.sequence = ++writeCount;
+    }
+
+    private String readReply() throws IOException {
+        ReplyReaderThread reader = replyReaderThread;
+        if (reader == null || !reader.isAlive())
+            throw new IOException("Not connected to GlobalCache " + hostIp);
+
+        try {
+            String reply = replies.poll(timeout, TimeUnit.MILLISECONDS);
+            if (reply == null)
+                throw new SocketTimeoutException("No reply from GlobalCache " + hostIp + " within " + timeout + " ms");
+            return reply;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Dispatches a response read by the reader thread.
+     * completeir and busyIR finish the outstanding sendir with the same ID,
+     * an error finishes the first written sendir on the addressed connector that may still be answered by an error,
+     * unless it answers the synchronous command waiting for a reply from the same connector.
+     * (As the GlobalCache answers in order, sendirs written after that command cannot be answered before it,
+     * and writeSyncCommand makes sure the ones written before have been confirmed.)
+     * Other replies go to the synchronous command waiting for them, if any.
+     * Everything else is handed to the response listeners.
+     * Finally, completeir is reported to the completion listeners.
+     */
+    private void dispatchResponse(GlobalCacheResponse response) {
+        PendingIrSend pending = null;
+        GlobalCacheResponse.Type type = response.getType();
+        synchronized (pendingIrSends) {
+            switch (type) {
+                case completeIr:
+                case busyIr:
+                    pending = pendingIrSends.remove(response.getId());
+                    break;
+                case error:
+                    long limit = awaitingReplies && syncAddress != null && syncAddress.equals(response.getAddress())
+                            ? syncSequence : Long.MAX_VALUE;
+                    for (PendingIrSend candidate : pendingIrSends.values())
+                        if (candidate.module == response.getModule() && candidate.connector == response.getConnector()
+                                && candidate.sequence > confirmedSequence && candidate.sequence < limit
+                                && (pending == null || candidate.sequence < pending.sequence))
+                            pending = candidate;
+                    if (pending != null)
+                        pendingIrSends.values().remove(pending);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (pending != null) {
+            if (type == GlobalCacheResponse.Type.error)
+                pending.future.completeExceptionally(new ErrorResponseException(hostIp, response));
+            else
+                pending.future.complete(type == GlobalCacheResponse.Type.completeIr);
+        } else if (awaitingReplies && !response.isNotification()
+                && type != GlobalCacheResponse.Type.completeIr && type != GlobalCacheResponse.Type.busyIr) {
+            syncAddress = null;
+            confirmedSequence = syncSequence;
+            replies.add(response.getLine());
+        }
+        else
+            responseListeners.forEach((listener) -> {
+                listener.response(response);
+            });
+
+        if (type == GlobalCacheResponse.Type.completeIr)
+            completionListeners.forEach((listener) -> {
+                listener.response(response);
+            });
+    }
+
+    private void failPendingIrSends(IOException ex) {
+        List<PendingIrSend> failed;
+        synchronized (pendingIrSends) {
+            failed = new ArrayList<>(pendingIrSends.values());
+            pendingIrSends.clear();
+        }
+        failed.forEach((pending) -> {
+            pending.future.completeExceptionally(ex);
+        });
     }
 
     private String[] sendCommand(String cmd, int noLines) throws IOException {
-        return sendCommand(cmd, noLines, smallDelay, null);
+        return sendCommand(cmd, noLines, 0, null);
     }
 
     public boolean stopIr(int module, int connector) throws IOException, NoSuchTransmitterException {
+        cancelRepeat(transmitterAddress(module, connector));
         sendCommand("stopir," + transmitterAddress(module, connector), 1);
         return true;
     }
@@ -701,21 +978,168 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
     }
 
     public boolean sendIr(String cmd) throws IOException {
+        String[] chunks = cmd.split(",", 4);
+        String[] address = chunks.length == 4 ? chunks[1].split(":") : new String[0];
+        if (address.length == 2 && chunks[0].equals(sendIrPrefix)) {
+            try {
+                int id = Integer.parseInt(chunks[2]);
+                return awaitIr(id, submitIr(cmd, Integer.parseInt(address[0]), Integer.parseInt(address[1]), id));
+            } catch (NumberFormatException ex) {
+            }
+        }
         String result = sendCommand(cmd);
-        return result.startsWith("completeir");
+        return result.startsWith(completeIrPrefix);
     }
 
     public String sendIrString(IrSignal code, int count, int module, int connector) throws NoSuchTransmitterException {
-        String cmd = sendIrString(code, count, module, connector, sendIndex, compressed);
-        sendIndex = (sendIndex + 1) % 65536;
-        return cmd;
+        return sendIrString(code, count, module, connector, nextSendIndex(), compressed);
+    }
+
+    int nextSendIndex() {
+        return sendIndex.getAndUpdate((i) -> (i + 1) % sendIndexModulus);
+    }
+
+    private PendingIrSend registerIr(int id, int module, int connector) {
+        PendingIrSend pending = new PendingIrSend(module, connector);
+        synchronized (pendingIrSends) {
+            PendingIrSend old = pendingIrSends.put(id, pending);
+            if (old != null)
+                old.future.completeExceptionally(new IOException("sendir ID " + id + " reused before completion"));
+        }
+        return pending;
+    }
+
+    private void unregisterIr(int id) {
+        synchronized (pendingIrSends) {
+            pendingIrSends.remove(id);
+        }
+    }
+
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private CompletableFuture<Boolean> submitIr(String cmd, int module, int connector, int id) throws IOException {
+        PendingIrSend pending = registerIr(id, module, connector);
+        if (verbose)
+            System.err.println("Sending command \"" + cmd + "\" to GlobalCache (" + hostIp + ")");
+        try {
+            synchronized (outputLock) {
+                written(pending);
+                writeCommand(cmd);
+            }
+        } catch (IOException ex) {
+            unregisterIr(id);
+            throw ex;
+        }
+        return pending.future;
+    }
+
+    /**
+     * Renders the sendir command directly into the socket, using the reusable encoder.
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    private CompletableFuture<Boolean> submitIr(IrSignal code, int count, int module, int connector, int id) throws IOException, NoSuchTransmitterException {
+        PendingIrSend pending = registerIr(id, module, connector);
+        try {
+            synchronized (outputLock) {
+                written(pending);
+                encoder.encode(code, count, module, connector, id, compressed).append('\r');
+                if (verbose)
+                    System.err.println("Sending command \"" + encoder.toString().trim() + "\" to GlobalCache (" + hostIp + ")");
+                encoder.writeTo(tcpSocketChannel.getOut());
+            }
+        } catch (IOException | NoSuchTransmitterException ex) {
+            unregisterIr(id);
+            throw ex;
+        }
+        return pending.future;
+    }
+
+    private boolean awaitIr(int id, CompletableFuture<Boolean> future) throws IOException {
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            synchronized (pendingIrSends) {
+                pendingIrSends.remove(id);
+            }
+            throw new SocketTimeoutException("No completeir from GlobalCache " + hostIp + " within " + timeout + " ms");
+        } catch (ExecutionException ex) {
+            logger.log(Level.WARNING, ex.getCause().getMessage());
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Sends an IR signal without waiting for its completion.
+     * The sendir command is written to the socket immediately, and tagged with its own ID.
+     * Several commands, to the same or different connectors, may be outstanding simultaneously.
+     *
+     * @param code IrSignal to send
+     * @param count number of times to send
+     * @param module
+     * @param connector
+     * @return Future that completes with true when the corresponding completeir arrives,
+     * with false if the GlobalCache answers busyIR, and exceptionally for errors and when closing.
+     * @throws NoSuchTransmitterException
+     * @throws IOException
+     */
+    public CompletableFuture<Boolean> sendIrAsync(IrSignal code, int count, int module, int connector) throws NoSuchTransmitterException, IOException {
+        if (!validConnector(connector))
+            throw new NoSuchTransmitterException(Integer.toString(connector));
+
+        return submitIr(code, count, module, connector, nextSendIndex());
+    }
+
+    /**
+     * Sends a sendir command, for GlobalCacheProxy.
+     * @param module
+     * @param connector
+     * @param id from nextSendIndex.
+     * @param parameters the fields of the sendir command following the ID.
+     * @return as for sendIrAsync; an ERR reply completes it with an ErrorResponseException.
+     * @throws IOException
+     */
+    CompletableFuture<Boolean> sendIrAsync(int module, int connector, int id, String parameters) throws IOException {
+        return submitIr(sendIrPrefix + "," + module + ":" + connector + "," + id + "," + parameters, module, connector, id);
+    }
+
+    /**
+     * Sends a sendir command with the ID of an outstanding one, for GlobalCacheProxy.
+     * The GlobalCache continues the ongoing transmission, and answers both with one completeir,
+     * which finishes the future of the original command.
+     * @param module
+     * @param connector
+     * @param id of the outstanding command.
+     * @param parameters the fields of the sendir command following the ID.
+     * @throws IOException
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    void resendIr(int module, int connector, int id, String parameters) throws IOException {
+        String cmd = sendIrPrefix + "," + module + ":" + connector + "," + id + "," + parameters;
+        if (verbose)
+            System.err.println("Sending command \"" + cmd + "\" to GlobalCache (" + hostIp + ")");
+        synchronized (outputLock) {
+            PendingIrSend pending;
+            synchronized (pendingIrSends) {
+                pending = pendingIrSends.get(id);
+            }
+            if (pending != null)
+                written(pending); // an error for the resend finishes the original
+            writeCommand(cmd);
+        }
+    }
+
+    public CompletableFuture<Boolean> sendIrAsync(IrSignal code, int count, Transmitter transmitter) throws NoSuchTransmitterException, IOException {
+        GlobalCacheIrTransmitter gct = newGlobalCacheIrTransmitter(transmitter);
+        return sendIrAsync(code, count, gct.module, gct.port);
     }
 
     public boolean sendIr(IrSignal code, int count, int module, int connector) throws NoSuchTransmitterException, IOException {
         if (!validConnector(connector))
             throw new NoSuchTransmitterException(Integer.toString(connector));
-        String cmd = sendIrString(code, count, module, connector);
-        return sendIr(cmd);
+        int id = nextSendIndex();
+        return awaitIr(id, submitIr(code, count, module, connector, id));
     }
 
     public boolean sendIr(IrSignal code, int count, int connector) throws IOException, NoSuchTransmitterException {
@@ -736,6 +1160,131 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         return sendIr(code, count, gct.module, gct.port);
     }
 
+    /**
+     * Sends an IR signal until stopIr is called for the same connector.
+     * The GlobalCache continues a transmission without gap when a sendir with the same ID arrives before it has ended;
+     * therefore the same sendir command is resent periodically, keeping about repeatHoldover ms of signal
+     * queued in the unit. stopIr ends the transmission immediately.
+     *
+     * @param code IrSignal to send; its repeat part determines the resend period.
+     * @param transmitter
+     * @return true if the transmission was started.
+     * @throws NoSuchTransmitterException
+     * @throws IOException
+     */
+    @Override
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public boolean sendIrRepeat(IrSignal code, Transmitter transmitter) throws NoSuchTransmitterException, IOException {
+        GlobalCacheIrTransmitter gct = newGlobalCacheIrTransmitter(transmitter);
+        if (!validConnector(gct.port))
+            throw new NoSuchTransmitterException(gct.toString());
+
+        String address = transmitterAddress(gct.module, gct.port);
+        cancelRepeat(address);
+
+        int[] intro = code.getIntroPulses();
+        int[] repeat = code.getRepeatPulses();
+        if (repeat.length == 0) {
+            // one-shot signal: repeat all of it
+            repeat = intro;
+            intro = new int[0];
+        }
+        long periods = sum(repeat);
+        if (periods == 0L)
+            return false;
+        double repeatDuration = 1000.0 * periods / code.getFrequency(); // ms
+        int count = Math.max(2, (int) Math.ceil(repeatHoldover / repeatDuration));
+        long resendPeriod = Math.max(1L, Math.round(count * repeatDuration / 2));
+
+        int id = nextSendIndex();
+        byte[] command;
+        synchronized (outputLock) {
+            encoder.encode(Math.round(code.getFrequency()), intro, repeat, count, gct.module, gct.port, id, compressed).append('\r');
+            command = Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+            if (verbose)
+                System.err.println("Sending command \"" + encoder.toString().trim() + "\" to GlobalCache (" + hostIp + "), repeating every " + resendPeriod + " ms");
+        }
+
+        RepeatSession session = new RepeatSession(address, id, command);
+        PendingIrSend pending = registerIr(id, gct.module, gct.port);
+        synchronized (repeatSessions) {
+            repeatSessions.put(address, session);
+            if (repeatExecutor == null)
+                repeatExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                    Thread thread = new Thread(runnable, "GlobalCache-repeat-" + hostIp);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        }
+        try {
+            synchronized (outputLock) {
+                written(pending);
+                session.write();
+            }
+        } catch (IOException ex) {
+            cancelRepeat(address);
+            throw ex;
+        }
+        // completeir (or busyIR, or an error) for the ID means that the train has ended on its own.
+        pending.future.whenComplete((success, ex) -> {
+            if (success == null || !success)
+                logger.log(Level.WARNING, "Repeated transmission on {0} ended prematurely", address);
+            cancelRepeat(address, session);
+        });
+        synchronized (repeatSessions) {
+            if (repeatSessions.get(address) == session)
+                session.timer = repeatExecutor.scheduleAtFixedRate(session::resend, resendPeriod, resendPeriod, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    private static long sum(int[] array) {
+        long result = 0L;
+        for (int i = 0; i < array.length; i++)
+            result += array[i];
+        return result;
+    }
+
+    private void cancelRepeat(String address) {
+        cancelRepeat(address, null);
+    }
+
+    /**
+     * Stops resending for the address, if session is null or the ongoing session.
+     */
+    private void cancelRepeat(String address, RepeatSession session) {
+        RepeatSession old;
+        synchronized (repeatSessions) {
+            old = repeatSessions.get(address);
+            if (old == null || (session != null && old != session))
+                return;
+            repeatSessions.remove(address);
+            if (old.timer != null)
+                old.timer.cancel(false);
+        }
+        // A resend already running must not write after us, e.g. after the stopir of stopIr.
+        synchronized (outputLock) {
+            old.cancelled = true;
+        }
+        unregisterIr(old.id);
+    }
+
+    private void cancelRepeats() {
+        List<String> addresses;
+        synchronized (repeatSessions) {
+            addresses = new ArrayList<>(repeatSessions.keySet());
+        }
+        addresses.forEach((address) -> {
+            cancelRepeat(address);
+        });
+        synchronized (repeatSessions) {
+            if (repeatExecutor != null) {
+                repeatExecutor.shutdownNow();
+                repeatExecutor = null;
+            }
+        }
+    }
+
     public String[] getDevices() {
         return getdevicesResult.clone();
     }
@@ -902,17 +1451,26 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
     // Only iTach, Flex GlobalConnect
     public synchronized ModulatedIrSequence capture() throws InvalidArgumentException {
         try {
-            String[] result = sendCommand("get_IRL", 1, smallDelay, null);
-            if (result[0].equals("IR Learner Enabled"))
-                result = sendCommand(null, 1, 0, null);
+            String[] result = sendCommand("get_IRL", 2, 0, learnerEnabled);
+            String learned = result[0].equals(learnerEnabled) ? result[1] : result[0];
 
-            IrSignal signal = parse(result[0]);
+            IrSignal signal = parse(learned);
             return signal != null ? signal.toModulatedIrSequence(1) : null;
         } catch (IOException ex) {
             return null;
         }
     }
 
+    /**
+     * Creates a learning session on a connection of its own, see GlobalCacheLearner.
+     * It has to be started by its start() method.
+     * @param callback receiving the learned signals; if null, they are queued in the learner.
+     * @return new GlobalCacheLearner
+     */
+    public GlobalCacheLearner newLearner(GlobalCacheLearner.Callback callback) {
+        return new GlobalCacheLearner(inetAddress, timeout, verbose, callback);
+    }
+
     @Override
     public boolean stopCapture() {
         String response;
@@ -926,7 +1484,7 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
 
     @Override
     public void setBeginTimeout(int timeout) throws IOException {
-        tcpSocketChannel.setTimeout(timeout);
+        setTimeout(timeout);
     }
 
     @Override
@@ -1012,6 +1570,231 @@ public class GlobalCache implements IHarcHardware, IRawIrSender, IIrSenderStop,
         }
     }
 
+    /**
+     * Single pass scanner for sendir strings.
+     */
+    private static class SendIrScanner {
+        private final String string;
+        private final int length;
+        private int pos;
+
+        SendIrScanner(String string) {
+            this.string = string;
+            this.length = string.length();
+            this.pos = 0;
+        }
+
+        private void skipWhitespace() {
+            while (pos < length && Character.isWhitespace(string.charAt(pos)))
+                pos++;
+        }
+
+        boolean skipPrefix() {
+            skipWhitespace();
+            if (!string.startsWith(sendIrPrefix, pos))
+                return false;
+            pos += sendIrPrefix.length();
+            skipWhitespace();
+            return pos < length && string.charAt(pos) == ',';
+        }
+
+        /**
+         * Skips the comma, and the following field up to the next comma.
+         */
+        boolean skipField() {
+            if (pos >= length || string.charAt(pos) != ',')
+                return false;
+            pos++;
+            while (pos < length && string.charAt(pos) != ',')
+                pos++;
+            return pos < length;
+        }
+
+        /**
+         * @return Value of the next comma-preceded field, or -1 if not present.
+         */
+        int nextHeaderNumber() throws InvalidArgumentException {
+            if (pos >= length || string.charAt(pos) != ',')
+                return -1;
+            pos++;
+            skipWhitespace();
+            if (pos >= length)
+                return -1;
+            int value = number();
+            skipWhitespace();
+            return value;
+        }
+
+        private int number() throws InvalidArgumentException {
+            int start = pos;
+            int value = 0;
+            while (pos < length) {
+                char ch = string.charAt(pos);
+                if (ch < '0' || ch > '9')
+                    break;
+                value = 10 * value + (ch - '0');
+                if (value < 0)
+                    throw new InvalidArgumentException("Number too large in sendir at position " + start);
+                pos++;
+            }
+            if (pos == start)
+                throw new InvalidArgumentException("Number expected in sendir at position " + start);
+            return value;
+        }
+
+        /**
+         * Scans the remaining durations, in carrier periods, expanding compression letters.
+         */
+        int[] durations() throws InvalidArgumentException {
+            int[] result = new int[Math.max(16, length - pos)];
+            int[] pairs = new int[2 * maxCompressedLetters];
+            int noPairs = 0;
+            int n = 0;
+            while (pos < length) {
+                char ch = string.charAt(pos);
+                if (ch == ',' || Character.isWhitespace(ch))
+                    pos++;
+                else if (ch >= 'A' && ch < 'A' + maxCompressedLetters) {
+                    int index = ch - 'A';
+                    if (index >= noPairs)
+                        throw new InvalidArgumentException("Undefined compression letter " + ch + " in sendir");
+                    if (n % 2 != 0)
+                        throw new InvalidArgumentException("Compression letter " + ch + " not at a pair boundary in sendir");
+                    if (n + 2 > result.length)
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    result[n++] = pairs[2 * index];
+                    result[n++] = pairs[2 * index + 1];
+                    pos++;
+                } else if (ch >= '0' && ch <= '9') {
+                    if (n == result.length)
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    result[n++] = number();
+                    if (n % 2 == 0 && noPairs < maxCompressedLetters) {
+                        int index = 0;
+                        while (index < noPairs && (pairs[2 * index] != result[n - 2] || pairs[2 * index + 1] != result[n - 1]))
+                            index++;
+                        if (index == noPairs) {
+                            pairs[2 * noPairs] = result[n - 2];
+                            pairs[2 * noPairs + 1] = result[n - 1];
+                            noPairs++;
+                        }
+                    }
+                } else
+                    throw new InvalidArgumentException("Invalid character '" + ch + "' in sendir at position " + pos);
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+
+    /**
+     * A sendIrRepeat transmission: the ready rendered sendir command, resent with the same ID.
+     */
+    private class RepeatSession {
+        private final String address;
+        private final int id;
+        private final byte[] command;
+        private ScheduledFuture<?> timer = null; // guarded by repeatSessions
+        private boolean cancelled = false; // guarded by outputLock
+
+        RepeatSession(String address, int id, byte[] command) {
+            this.address = address;
+            this.id = id;
+            this.command = command;
+        }
+
+        private void write() throws IOException {
+            synchronized (outputLock) {
+                if (cancelled)
+                    return;
+                if (tcpSocketChannel == null)
+                    throw new IOException("GlobalCache " + hostIp + " closed");
+                tcpSocketChannel.getOut().write(command);
+            }
+        }
+
+        private void resend() {
+            try {
+                write();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Resending to {0} failed: {1}", new Object[]{address, ex.getMessage()});
+                cancelRepeat(address, this);
+            }
+        }
+    }
+
+    /**
+     * Completes the future of an asynchronous sendir answered by an error.
+     */
+    static class ErrorResponseException extends IOException {
+        private final GlobalCacheResponse response;
+
+        ErrorResponseException(String hostIp, GlobalCacheResponse response) {
+            super("GlobalCache " + hostIp + " answered " + response);
+            this.response = response;
+        }
+
+        GlobalCacheResponse getResponse() {
+            return response;
+        }
+    }
+
+    private static class PendingIrSend {
+        private final int module;
+        private final int connector;
+        private final CompletableFuture<Boolean> future;
+        private volatile long sequence = Long.MAX_VALUE; // write number, MAX_VALUE until written
+
+        PendingIrSend(int module, int connector) {
+            this.module = module;
+            this.connector = connector;
+            this.future = new CompletableFuture<>();
+        }
+
+        private String getAddress() {
+            return module + ":" + connector;
+        }
+    }
+
+    private class ReplyReaderThread extends Thread {
+        private final TcpSocketChannel channel;
+
+        ReplyReaderThread(TcpSocketChannel channel) {
+            super("GlobalCache-" + hostIp);
+            this.channel = channel;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    String line;
+                    try {
+                        line = channel.readString();
+                    } catch (SocketTimeoutException ex) {
+                        continue;
+                    }
+                    if (line == null)
+                        break;
+                    if (!line.isEmpty())
+                        dispatchResponse(GlobalCacheResponse.parse(line));
+                }
+            } catch (IOException ex) {
+                if (!isInterrupted())
+                    logger.log(Level.WARNING, "Reading from GlobalCache {0} failed: {1}", new Object[]{hostIp, ex.getMessage()});
+            }
+            failPendingIrSends(new IOException("Connection to GlobalCache " + hostIp + " lost"));
+            logger.log(Level.FINE, "ReplyReaderThread for {0} exited.", hostIp);
+        }
+    }
+
+    /**
+     * Receives responses from the GlobalCache not claimed by a command.
+     */
+    public interface ResponseListener {
+        public void response(GlobalCacheResponse response);
+    }
+
     public class SerialPort implements ICommandLineDevice, IBytesCommand {
         private final int portIndex; // 0 or 1, i.e. zero based.
         private TcpSocketChannel tcpSocketChannel;
@@ -0,0 +1,201 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import org.harctoolbox.ircore.IrSignal;
+
+/**
+ * Renders sendir commands as ASCII into a reusable byte buffer, in the uncompressed or the compressed form.
+ * Once the buffer has grown to its working size, nothing is allocated per signal.
+ * Instances are not thread safe.
+ */
+public final class GlobalCacheEncoder {
+
+    private static final int defaultCapacity = 512;
+    private static final byte[] sendIrPrefix = (GlobalCache.sendIrPrefix + ",").getBytes(StandardCharsets.US_ASCII);
+
+    private static long pairKey(int a, int b) {
+        return (((long) a) << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    private byte[] buffer;
+    private int length;
+
+    /**
+     * The duration pairs that have been assigned compression letters, the letter being 'A' + index.
+     */
+    private final long[] pairs = new long[GlobalCache.maxCompressedLetters];
+    private int noPairs;
+
+    public GlobalCacheEncoder(int capacity) {
+        buffer = new byte[capacity];
+        length = 0;
+    }
+
+    public GlobalCacheEncoder() {
+        this(defaultCapacity);
+    }
+
+    /**
+     * Renders a sendir command, replacing the previous content of the buffer.
+     * @param code
+     * @param count
+     * @param module
+     * @param connector
+     * @param sendIndex
+     * @param compressed
+     * @return this
+     * @throws NoSuchTransmitterException
+     */
+    public GlobalCacheEncoder encode(IrSignal code, int count, int module, int connector, int sendIndex, boolean compressed) throws NoSuchTransmitterException {
+        return encode(Math.round(code.getFrequency()), code.getIntroPulses(), code.getRepeatPulses(), count, module, connector, sendIndex, compressed);
+    }
+
+    /**
+     * Renders a sendir command from durations in carrier periods, replacing the previous content of the buffer.
+     * @param frequency
+     * @param intro
+     * @param repeat
+     * @param count
+     * @param module
+     * @param connector
+     * @param sendIndex
+     * @param compressed
+     * @return this
+     * @throws NoSuchTransmitterException
+     */
+    public GlobalCacheEncoder encode(long frequency, int[] intro, int[] repeat, int count, int module, int connector, int sendIndex, boolean compressed) throws NoSuchTransmitterException {
+        if (connector < GlobalCache.connectorMin || connector > GlobalCache.connectorsPerModule + GlobalCache.connectorMin - 1)
+            throw new NoSuchTransmitterException("" + module + ":" + connector);
+
+        length = 0;
+        ensureCapacity(sendIrPrefix.length + 64 + 12 * (intro.length + repeat.length));
+        System.arraycopy(sendIrPrefix, 0, buffer, 0, sendIrPrefix.length);
+        length = sendIrPrefix.length;
+        appendNumber(module);
+        buffer[length++] = ':';
+        appendNumber(connector);
+        buffer[length++] = ',';
+        appendNumber(sendIndex % 65536);
+        buffer[length++] = ',';
+        appendNumber(frequency);
+        buffer[length++] = ',';
+        appendNumber(count);
+        buffer[length++] = ',';
+        appendNumber(1 + intro.length);
+        if (compressed) {
+            noPairs = 0;
+            appendCompressed(intro);
+            appendCompressed(repeat);
+        } else {
+            appendUncompressed(intro);
+            appendUncompressed(repeat);
+        }
+        return this;
+    }
+
+    /**
+     * Appends a single character, typically the line terminator.
+     * @param ch ASCII character
+     * @return this
+     */
+    public GlobalCacheEncoder append(char ch) {
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) ch;
+        return this;
+    }
+
+    public void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(buffer, 0, length);
+    }
+
+    /**
+     * @return The internal buffer; only the first getLength() bytes are valid.
+     */
+    @SuppressWarnings("ReturnOfCollectionOrArrayField")
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private void appendUncompressed(int[] array) {
+        for (int i = 0; i < array.length; i++) {
+            buffer[length++] = ',';
+            appendNumber(array[i]);
+        }
+    }
+
+    private void appendCompressed(int[] seq) {
+        for (int i = 0; i < seq.length / 2; i++) {
+            int a = seq[2 * i];
+            int b = seq[2 * i + 1];
+            long key = pairKey(a, b);
+            int index = 0;
+            while (index < noPairs && pairs[index] != key)
+                index++;
+
+            if (index < noPairs)
+                buffer[length++] = (byte) ('A' + index);
+            else {
+                if (noPairs < pairs.length)
+                    pairs[noPairs++] = key;
+                buffer[length++] = ',';
+                appendNumber(a);
+                buffer[length++] = ',';
+                appendNumber(b);
+            }
+        }
+    }
+
+    private void appendNumber(long number) {
+        long n = number;
+        if (n < 0) {
+            buffer[length++] = '-';
+            n = -n;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + (int) (n % 10));
+            n /= 10;
+        } while (n > 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            byte[] newBuffer = new byte[Math.max(capacity, 2 * buffer.length)];
+            System.arraycopy(buffer, 0, newBuffer, 0, length);
+            buffer = newBuffer;
+        }
+    }
+}
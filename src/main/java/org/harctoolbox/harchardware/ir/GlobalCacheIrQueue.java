@@ -0,0 +1,295 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.ircore.IrSignal;
+
+/**
+ * Transmit queues, one per module:connector, on top of a GlobalCache.
+ * Accepts bursts of signals, and keeps at most maxInFlight of them outstanding on each connector.
+ * Signals are written in queue order, so that they are sent in submit order on each connector.
+ * A sendir rejected with busyIR is put first in its queue again, and resent as soon as a
+ * completeir for the same connector arrives, also for commands not issued through this queue, like
+ * GlobalCache.sendIr. If no completeir can be expected, since nothing issued through the GlobalCache object
+ * is outstanding on the connector (i.e. another client of the unit is using it), it is resent after busyRetryDelay instead.
+ */
+public class GlobalCacheIrQueue implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(GlobalCacheIrQueue.class.getName());
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1;
+    public static final int DEFAULT_BUSY_RETRY_DELAY = 50; // ms
+
+    private final GlobalCache globalCache;
+    private final int maxInFlight;
+    private int busyRetryDelay = DEFAULT_BUSY_RETRY_DELAY;
+    private final Map<String, ConnectorQueue> queues = new HashMap<>(8);
+    private final ScheduledExecutorService retryExecutor;
+    private final GlobalCache.ResponseListener completionListener;
+
+    private long transmissions = 0;
+    private long totalWaitTime = 0; // ms
+    private long maxWaitTime = 0; // ms
+    private boolean closed = false;
+
+    public GlobalCacheIrQueue(GlobalCache globalCache, int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        this.globalCache = globalCache;
+        this.maxInFlight = maxInFlight;
+        retryExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+            Thread thread = new Thread(runnable, "GlobalCacheIrQueue-" + globalCache.getIp());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // every completeir, also for commands not issued through us, e.g. sent by GlobalCache.sendIr(String)
+        completionListener = (GlobalCacheResponse response) -> {
+            unblock(response.getAddress());
+        };
+        globalCache.addCompletionListener(completionListener);
+    }
+
+    public GlobalCacheIrQueue(GlobalCache globalCache) {
+        this(globalCache, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param busyRetryDelay delay in milliseconds before resending after busyIR,
+     * used only when no completeir can be expected on the connector.
+     */
+    public void setBusyRetryDelay(int busyRetryDelay) {
+        this.busyRetryDelay = busyRetryDelay;
+    }
+
+    /**
+     * Puts an IrSignal in the queue of its connector.
+     * @param irSignal
+     * @param count
+     * @param transmitter GlobalCache transmitter, or null for the default.
+     * @return Future completing with true when sent, exceptionally on errors.
+     */
+    public CompletableFuture<Boolean> submit(IrSignal irSignal, int count, Transmitter transmitter) {
+        return submit(irSignal, count, globalCache.newGlobalCacheIrTransmitter(transmitter));
+    }
+
+    private CompletableFuture<Boolean> submit(IrSignal irSignal, int count, GlobalCache.GlobalCacheIrTransmitter transmitter) {
+        Entry entry = new Entry(irSignal, count, transmitter);
+        ConnectorQueue queue;
+        synchronized (this) {
+            if (closed) {
+                entry.result.completeExceptionally(new IOException("Queue closed"));
+                return entry.result;
+            }
+            queue = queues.computeIfAbsent(transmitter.toString(), (address) -> new ConnectorQueue());
+        }
+        synchronized (queue) {
+            queue.waiting.addLast(entry);
+        }
+        pump(queue);
+        return entry.result;
+    }
+
+    public CompletableFuture<Boolean> submit(IrSignal irSignal, int module, int connector) throws NoSuchTransmitterException {
+        return submit(irSignal, 1, globalCache.newTransmitter(module, connector));
+    }
+
+    /**
+     * @param module
+     * @param connector
+     * @return Number of signals waiting (not yet sent) for the connector.
+     */
+    public int getQueueDepth(int module, int connector) {
+        ConnectorQueue queue;
+        synchronized (this) {
+            queue = queues.get(module + ":" + connector);
+        }
+        if (queue == null)
+            return 0;
+        synchronized (queue) {
+            return queue.waiting.size();
+        }
+    }
+
+    /**
+     * @return Number of signals waiting, for all connectors.
+     */
+    public synchronized int getQueueDepth() {
+        int depth = 0;
+        for (ConnectorQueue queue : queues.values())
+            synchronized (queue) {
+                depth += queue.waiting.size();
+            }
+        return depth;
+    }
+
+    /**
+     * @return Average time in milliseconds between submit and the first transmission attempt.
+     */
+    public synchronized double getAverageWaitTime() {
+        return transmissions > 0 ? ((double) totalWaitTime) / transmissions : 0.0;
+    }
+
+    /**
+     * @return Maximal time in milliseconds between submit and the first transmission attempt.
+     */
+    public synchronized long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Discards all waiting signals, completing them exceptionally.
+     * Outstanding transmissions are not affected.
+     */
+    @Override
+    public void close() {
+        globalCache.removeCompletionListener(completionListener);
+        retryExecutor.shutdownNow();
+        synchronized (this) {
+            closed = true;
+            IOException ex = new IOException("Queue closed");
+            queues.values().forEach((queue) -> {
+                synchronized (queue) {
+                    queue.waiting.forEach((entry) -> {
+                        entry.result.completeExceptionally(ex);
+                    });
+                    queue.waiting.clear();
+                }
+            });
+        }
+    }
+
+    private synchronized void recordWait(Entry entry) {
+        long wait = System.currentTimeMillis() - entry.submitted;
+        transmissions++;
+        totalWaitTime += wait;
+        maxWaitTime = Math.max(maxWaitTime, wait);
+    }
+
+    private void pump(ConnectorQueue queue) {
+        while (true) {
+            Entry entry;
+            CompletableFuture<Boolean> future = null;
+            Exception failure = null;
+            synchronized (queue) {
+                if (queue.blocked || queue.inFlight >= maxInFlight || queue.waiting.isEmpty())
+                    return;
+                entry = queue.waiting.pollFirst();
+                entry.attempts++;
+                queue.inFlight++;
+                // Written while holding the lock, so that concurrent pumps cannot reorder the queue on the wire.
+                try {
+                    future = globalCache.sendIrAsync(entry.irSignal, entry.count, entry.transmitter);
+                } catch (IOException | NoSuchTransmitterException ex) {
+                    queue.inFlight--;
+                    failure = ex;
+                }
+            }
+            if (entry.attempts == 1)
+                recordWait(entry);
+            if (failure != null)
+                entry.result.completeExceptionally(failure);
+            else
+                future.whenComplete((success, ex) -> {
+                    finished(queue, entry, success, ex);
+                });
+        }
+    }
+
+    private void finished(ConnectorQueue queue, Entry entry, Boolean success, Throwable ex) {
+        boolean scheduleRetry = false;
+        synchronized (queue) {
+            queue.inFlight--;
+            if (ex == null && !success) {
+                logger.log(Level.FINE, "busyIR on {0}, attempt {1}", new Object[]{entry.transmitter, entry.attempts});
+                queue.waiting.addFirst(entry);
+                queue.blocked = true;
+            } else if (ex == null)
+                queue.blocked = false;
+            // Blocked by a busyIR, possibly an earlier one, and no completeir of ours left to unblock.
+            scheduleRetry = queue.blocked && queue.inFlight == 0
+                    && !globalCache.isTransmitting(entry.transmitter);
+        }
+
+        if (ex != null)
+            entry.result.completeExceptionally(ex);
+        else if (success)
+            entry.result.complete(true);
+
+        if (scheduleRetry) {
+            try {
+                retryExecutor.schedule(() -> {
+                    unblock(queue);
+                }, busyRetryDelay, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // executor shut down by close()
+            }
+        } else
+            pump(queue);
+    }
+
+    private void unblock(String address) {
+        ConnectorQueue queue;
+        synchronized (this) {
+            queue = queues.get(address);
+        }
+        if (queue != null)
+            unblock(queue);
+    }
+
+    private void unblock(ConnectorQueue queue) {
+        synchronized (queue) {
+            queue.blocked = false;
+        }
+        pump(queue);
+    }
+
+    private static class Entry {
+        private final IrSignal irSignal;
+        private final int count;
+        private final GlobalCache.GlobalCacheIrTransmitter transmitter;
+        private final CompletableFuture<Boolean> result;
+        private final long submitted;
+        private int attempts;
+
+        Entry(IrSignal irSignal, int count, GlobalCache.GlobalCacheIrTransmitter transmitter) {
+            this.irSignal = irSignal;
+            this.count = count;
+            this.transmitter = transmitter;
+            this.result = new CompletableFuture<>();
+            this.submitted = System.currentTimeMillis();
+            this.attempts = 0;
+        }
+    }
+
+    private static class ConnectorQueue {
+        private final Deque<Entry> waiting = new ArrayDeque<>(8);
+        private int inFlight = 0;
+        private boolean blocked = false;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.harchardware.comm.TcpSocketChannel;
+import org.harctoolbox.harchardware.comm.TcpSocketPort;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSignal;
+import org.harctoolbox.ircore.ModulatedIrSequence;
+
+/**
+ * A learning session of a GlobalCache (iTach, Flex, Global Connect), on its own connection.
+ * The IR learner is enabled once, and every learned signal is delivered,
+ * to a callback, or to a queue, until stop() is called.
+ * Since the control connection of a GlobalCache object is not used, transmissions continue undisturbed.
+ */
+public class GlobalCacheLearner implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(GlobalCacheLearner.class.getName());
+
+    private static final int gcPort = 4998;
+    private static final String learnerEnabled = "IR Learner Enabled";
+    private static final String learnerDisabled = "IR Learner Disabled";
+    private static final String learnerUnavailable = "IR Learner Unavailable";
+    private static final long stopTimeout = 1000; // ms, waiting for "IR Learner Disabled"
+
+    private final TcpSocketChannel tcpSocketChannel;
+    private final Callback callback;
+    private final BlockingQueue<ModulatedIrSequence> learned;
+    private final boolean verbose;
+    private LearnerThread learnerThread = null;
+    private volatile boolean stopping = false;
+
+    /**
+     * @param inetAddress GlobalCache to use
+     * @param timeout socket timeout in milliseconds
+     * @param verbose
+     * @param callback if null, learned signals are queued, to be fetched by poll.
+     */
+    public GlobalCacheLearner(InetAddress inetAddress, int timeout, boolean verbose, Callback callback) {
+        this.tcpSocketChannel = new TcpSocketChannel(inetAddress, gcPort, timeout, verbose, TcpSocketPort.ConnectionMode.keepAlive);
+        this.callback = callback;
+        this.learned = callback == null ? new LinkedBlockingQueue<>() : null;
+        this.verbose = verbose;
+    }
+
+    public GlobalCacheLearner(InetAddress inetAddress, int timeout, boolean verbose) {
+        this(inetAddress, timeout, verbose, null);
+    }
+
+    /**
+     * Connects, enables the learner, and starts delivering learned signals.
+     * @throws IOException
+     */
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public synchronized void start() throws IOException {
+        if (learnerThread != null)
+            return;
+
+        stopping = false;
+        tcpSocketChannel.connect();
+        if (verbose)
+            System.err.println("Sending command \"get_IRL\" to GlobalCache");
+        tcpSocketChannel.sendString("get_IRL\r");
+        learnerThread = new LearnerThread();
+        learnerThread.start();
+    }
+
+    /**
+     * Disables the learner, and closes the connection.
+     * @throws IOException
+     */
+    public synchronized void stop() throws IOException {
+        if (learnerThread == null)
+            return;
+
+        stopping = true;
+        try {
+            tcpSocketChannel.sendString("stop_IRL\r");
+            learnerThread.join(stopTimeout);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            learnerThread.interrupt();
+            learnerThread = null;
+            tcpSocketChannel.close(true);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+    }
+
+    public synchronized boolean isRunning() {
+        return learnerThread != null && learnerThread.isAlive();
+    }
+
+    /**
+     * Returns the next learned signal, when not using a callback.
+     * @param timeout in milliseconds
+     * @return learned signal, or null if none within timeout.
+     * @throws InterruptedException
+     */
+    public ModulatedIrSequence poll(int timeout) throws InterruptedException {
+        if (learned == null)
+            throw new IllegalStateException("Learned signals are delivered to the callback");
+        return learned.poll(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    private void deliver(String line) {
+        try {
+            IrSignal signal = GlobalCache.parse(line);
+            if (signal == null) {
+                logger.log(Level.WARNING, "Unexpected line from learner: {0}", line);
+                return;
+            }
+            ModulatedIrSequence sequence = signal.toModulatedIrSequence(1);
+            if (callback != null)
+                callback.learned(sequence);
+            else
+                learned.add(sequence);
+        } catch (InvalidArgumentException ex) {
+            logger.log(Level.WARNING, "Unparsable learned signal: {0}", ex.getMessage());
+        }
+    }
+
+    private class LearnerThread extends Thread {
+
+        LearnerThread() {
+            super("GlobalCacheLearner");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    String line;
+                    try {
+                        line = tcpSocketChannel.readString();
+                    } catch (SocketTimeoutException ex) {
+                        continue;
+                    }
+                    if (line == null || line.startsWith(learnerDisabled))
+                        break;
+                    if (line.startsWith(learnerUnavailable)) {
+                        logger.log(Level.WARNING, "GlobalCache learner unavailable");
+                        break;
+                    }
+                    if (line.isEmpty() || line.startsWith(learnerEnabled))
+                        continue;
+                    deliver(line);
+                }
+            } catch (IOException ex) {
+                if (!stopping)
+                    logger.log(Level.WARNING, "Reading from GlobalCache learner failed: {0}", ex.getMessage());
+            }
+            logger.fine("LearnerThread exited.");
+        }
+    }
+
+    /**
+     * Receives the learned signals, in the reader thread.
+     */
+    public interface Callback {
+        public void learned(ModulatedIrSequence irSequence);
+    }
+}
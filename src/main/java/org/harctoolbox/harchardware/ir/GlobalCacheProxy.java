@@ -0,0 +1,300 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local server speaking the GlobalCache TCP API, sharing the one connection of a GlobalCache object
+ * between any number of local clients.
+ * sendir commands are forwarded with IDs of the GlobalCache object, and the completeir, busyIR, or ERR
+ * is returned to the issuing client with its own ID. A sendir repeating the ID of an outstanding one from the same client
+ * and to the same connector is forwarded with the same upstream ID, so that it continues the transmission. getdevices and getversion are answered from cache,
+ * sensornotify and statechange are sent to all clients, everything else is forwarded, one command at a time.
+ * The IR learner cannot be shared, and is reported as unavailable; use GlobalCacheLearner instead.
+ */
+public class GlobalCacheProxy implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(GlobalCacheProxy.class.getName());
+
+    public static final int DEFAULT_PORT = 4998;
+    private static final String learnerUnavailable = "IR Learner Unavailable";
+
+    private final GlobalCache globalCache;
+    private final ServerSocket serverSocket;
+    private final List<ClientThread> clients = new CopyOnWriteArrayList<>();
+    private final GlobalCache.ResponseListener notificationListener;
+    private final String[] devices;
+    private String version = null;
+    private AcceptThread acceptThread = null;
+
+    /**
+     * @param globalCache opened GlobalCache, the upstream connection.
+     * @param localPort TCP port to listen to.
+     * @param bindAddress local address to bind to, or null for all.
+     * @throws IOException
+     */
+    public GlobalCacheProxy(GlobalCache globalCache, int localPort, InetAddress bindAddress) throws IOException {
+        this.globalCache = globalCache;
+        this.devices = globalCache.getDevices();
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, localPort));
+        notificationListener = (GlobalCacheResponse response) -> {
+            if (response.isNotification())
+                clients.forEach((client) -> {
+                    client.reply(response.getLine());
+                });
+        };
+    }
+
+    public GlobalCacheProxy(GlobalCache globalCache, int localPort) throws IOException {
+        this(globalCache, localPort, null);
+    }
+
+    /**
+     * Starts accepting clients.
+     */
+    public synchronized void start() {
+        if (acceptThread != null)
+            return;
+
+        globalCache.addResponseListener(notificationListener);
+        acceptThread = new AcceptThread();
+        acceptThread.start();
+    }
+
+    public int getLocalPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return Number of presently connected clients.
+     */
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Stops accepting, and disconnects all clients. The GlobalCache is not closed.
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        globalCache.removeResponseListener(notificationListener);
+        serverSocket.close();
+        if (acceptThread != null) {
+            acceptThread.interrupt();
+            acceptThread = null;
+        }
+        clients.forEach((client) -> {
+            client.disconnect();
+        });
+        clients.clear();
+    }
+
+    private synchronized String getVersionLine() throws IOException {
+        if (version == null)
+            version = globalCache.sendCommandLine("getversion");
+        return version;
+    }
+
+    private class AcceptThread extends Thread {
+
+        AcceptThread() {
+            super("GlobalCacheProxy-" + globalCache.getIp());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    ClientThread client = new ClientThread(socket);
+                    clients.add(client);
+                    client.start();
+                    logger.log(Level.INFO, "Client {0} connected", socket.getRemoteSocketAddress());
+                }
+            } catch (IOException ex) {
+                if (!serverSocket.isClosed())
+                    logger.log(Level.WARNING, "Accepting clients failed: {0}", ex.getMessage());
+            }
+        }
+    }
+
+    private class ClientThread extends Thread {
+        private final Socket socket;
+        private final OutputStream outputStream;
+        private final StringBuilder line = new StringBuilder(128);
+
+        /**
+         * Upstream IDs of the outstanding sendirs, indexed by module:connector,client ID.
+         */
+        private final Map<String, Integer> upstreamIds = new HashMap<>(8);
+
+        ClientThread(Socket socket) throws IOException {
+            super("GlobalCacheProxy-client-" + socket.getRemoteSocketAddress());
+            this.socket = socket;
+            this.outputStream = socket.getOutputStream();
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (InputStream inputStream = new BufferedInputStream(socket.getInputStream())) {
+                while (readLine(inputStream))
+                    if (line.length() > 0)
+                        execute(line.toString());
+            } catch (IOException ex) {
+                if (!socket.isClosed())
+                    logger.log(Level.WARNING, "Reading from client failed: {0}", ex.getMessage());
+            }
+            clients.remove(this);
+            disconnect();
+            logger.log(Level.INFO, "Client {0} disconnected", socket.getRemoteSocketAddress());
+        }
+
+        /**
+         * Reads a line terminated by CR and/or LF into line.
+         * @return false on end of stream.
+         */
+        private boolean readLine(InputStream inputStream) throws IOException {
+            line.setLength(0);
+            while (true) {
+                int ch = inputStream.read();
+                if (ch == -1)
+                    return line.length() > 0;
+                if (ch == '\r' || ch == '\n')
+                    return true;
+                line.append((char) ch);
+            }
+        }
+
+        private void execute(String command) {
+            String[] chunks = command.split(",", 4);
+            try {
+                switch (chunks[0]) {
+                    case "getdevices":
+                        for (String device : devices)
+                            reply(device);
+                        break;
+                    case "getversion":
+                        reply(chunks.length == 1 ? getVersionLine() : globalCache.sendCommandLine(command));
+                        break;
+                    case "get_IRL":
+                    case "stop_IRL":
+                        reply(learnerUnavailable);
+                        break;
+                    case GlobalCache.sendIrPrefix:
+                        if (!sendIr(chunks))
+                            reply(globalCache.sendCommandLine(command)); // malformed, let the GlobalCache complain
+                        break;
+                    default:
+                        reply(globalCache.sendCommandLine(command));
+                        break;
+                }
+            } catch (SocketTimeoutException ex) {
+                logger.log(Level.WARNING, "No reply to \"{0}\"", command);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Forwarding \"{0}\" failed: {1}", new Object[]{command, ex.getMessage()});
+            }
+        }
+
+        private boolean sendIr(String[] chunks) throws IOException {
+            if (chunks.length != 4)
+                return false;
+            String[] address = chunks[1].split(":");
+            if (address.length != 2)
+                return false;
+
+            int module;
+            int connector;
+            try {
+                module = Integer.parseInt(address[0]);
+                connector = Integer.parseInt(address[1]);
+            } catch (NumberFormatException ex) {
+                return false;
+            }
+            String clientId = chunks[2];
+            String key = chunks[1] + "," + clientId;
+            int id;
+            CompletableFuture<Boolean> future;
+            synchronized (upstreamIds) {
+                Integer outstanding = upstreamIds.get(key);
+                if (outstanding != null) {
+                    // continuation, answered by the completeir of the original
+                    globalCache.resendIr(module, connector, outstanding, chunks[3]);
+                    return true;
+                }
+                id = globalCache.nextSendIndex();
+                future = globalCache.sendIrAsync(module, connector, id, chunks[3]);
+                upstreamIds.put(key, id);
+            }
+            future.whenComplete((success, ex) -> {
+                synchronized (upstreamIds) {
+                    upstreamIds.remove(key, id);
+                }
+                if (ex == null)
+                    reply((success ? "completeir," : "busyIR,") + chunks[1] + "," + clientId);
+                else if (ex instanceof GlobalCache.ErrorResponseException)
+                    reply(((GlobalCache.ErrorResponseException) ex).getResponse().getLine());
+                else
+                    logger.log(Level.WARNING, "sendir failed: {0}", ex.getMessage());
+            });
+            return true;
+        }
+
+        private void reply(String reply) {
+            synchronized (outputStream) {
+                try {
+                    outputStream.write((reply + "\r").getBytes(StandardCharsets.US_ASCII));
+                    outputStream.flush();
+                } catch (IOException ex) {
+                    logger.log(Level.FINE, "Writing to client failed: {0}", ex.getMessage());
+                    disconnect();
+                }
+            }
+        }
+
+        private void disconnect() {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                logger.log(Level.FINE, ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+/**
+ * One line received on the control socket of a GlobalCache, parsed once into
+ * its type, the addressed module:connector, and the ID or state field.
+ */
+public final class GlobalCacheResponse {
+
+    public static final int INVALID = -1;
+
+    /**
+     * Parses a line received from a GlobalCache. Never returns null.
+     * @param line as received, without line terminator.
+     * @return parsed response
+     */
+    public static GlobalCacheResponse parse(String line) {
+        int length = line.length();
+        int keywordEnd = 0;
+        while (keywordEnd < length && line.charAt(keywordEnd) != ',')
+            keywordEnd++;
+
+        Type type;
+        int addressStart;
+        if (line.startsWith("ERR_")) {
+            type = Type.error;
+            addressStart = 4;
+        } else {
+            type = Type.parse(line, keywordEnd);
+            addressStart = keywordEnd + 1;
+        }
+
+        int module = INVALID;
+        int connector = INVALID;
+        int value = INVALID;
+        if (type != Type.other && addressStart < length) {
+            int pos = addressStart;
+            int number = 0;
+            boolean digits = false;
+            while (pos < length && Character.isDigit(line.charAt(pos))) {
+                number = 10 * number + line.charAt(pos) - '0';
+                digits = true;
+                pos++;
+            }
+            if (digits && pos < length && line.charAt(pos) == ':') {
+                module = number;
+                pos++;
+                number = 0;
+                digits = false;
+                while (pos < length && Character.isDigit(line.charAt(pos))) {
+                    number = 10 * number + line.charAt(pos) - '0';
+                    digits = true;
+                    pos++;
+                }
+                if (digits)
+                    connector = number;
+            }
+            if (connector != INVALID && pos < length && line.charAt(pos) == ',' && type != Type.error) {
+                pos++;
+                number = 0;
+                digits = false;
+                while (pos < length && Character.isDigit(line.charAt(pos))) {
+                    number = 10 * number + line.charAt(pos) - '0';
+                    digits = true;
+                    pos++;
+                }
+                if (digits)
+                    value = number;
+            }
+        }
+        return new GlobalCacheResponse(line, type, module, connector, value);
+    }
+
+    private final String line;
+    private final Type type;
+    private final int module;
+    private final int connector;
+    private final int value;
+
+    private GlobalCacheResponse(String line, Type type, int module, int connector, int value) {
+        this.line = line;
+        this.type = type;
+        this.module = module;
+        this.connector = connector;
+        this.value = value;
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getModule() {
+        return module;
+    }
+
+    public int getConnector() {
+        return connector;
+    }
+
+    /**
+     * @return module:connector as string, or null if not present.
+     */
+    public String getAddress() {
+        return connector != INVALID ? module + ":" + connector : null;
+    }
+
+    /**
+     * For completeir and busyIR, the ID of the sendir.
+     * @return ID, or INVALID
+     */
+    public int getId() {
+        return type == Type.completeIr || type == Type.busyIr ? value : INVALID;
+    }
+
+    /**
+     * For state, statechange and sensornotify, the state of the connector.
+     * @return state, or INVALID
+     */
+    public int getState() {
+        return type == Type.state || type == Type.stateChange || type == Type.sensorNotify ? value : INVALID;
+    }
+
+    /**
+     * @return true for messages the GlobalCache sends on its own initiative.
+     */
+    public boolean isNotification() {
+        return type == Type.stateChange || type == Type.sensorNotify;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+
+    public enum Type {
+        completeIr("completeir"),
+        busyIr("busyIR"),
+        error("ERR"),
+        state("state"),
+        stateChange("statechange"),
+        sensorNotify("sensornotify"),
+        other("");
+
+        private static Type parse(String line, int keywordEnd) {
+            for (Type t : values())
+                if (t != other && t != error && t.keyword.length() == keywordEnd && line.startsWith(t.keyword))
+                    return t;
+            return other;
+        }
+
+        private final String keyword;
+
+        Type(String keyword) {
+            this.keyword = keyword;
+        }
+
+        public String getKeyword() {
+            return keyword;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channel;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Full duplex streaming between a serial port of a GlobalCache (TCP port 4999 and up)
+ * and a local endpoint, either a local TCP listener, or an InputStream/OutputStream pair.
+ * The connection to the GlobalCache is kept open for the whole session;
+ * bytes are moved through NIO channels and direct buffers, one thread per direction.
+ */
+public class GlobalCacheSerialBridge implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(GlobalCacheSerialBridge.class.getName());
+
+    public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final InetSocketAddress deviceAddress;
+    private final int timeout;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    private final AtomicLong bytesToDevice = new AtomicLong(0L);
+    private final AtomicLong bytesFromDevice = new AtomicLong(0L);
+
+    private SocketChannel deviceChannel = null;
+    private ServerSocketChannel serverChannel = null;
+    private Thread acceptThread = null;
+    private PumpThread upstream = null;
+    private PumpThread downstream = null;
+
+    /**
+     * @param inetAddress GlobalCache
+     * @param portNumber TCP port number of the serial port, i.e. 4999 for the first.
+     * @param timeout connect timeout in milliseconds.
+     */
+    public GlobalCacheSerialBridge(InetAddress inetAddress, int portNumber, int timeout) {
+        this.deviceAddress = new InetSocketAddress(inetAddress, portNumber);
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param bufferSize size of the direct buffer used for each direction. Takes effect for the next session.
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Streams between the serial port and a pair of streams, until close, or until either side ends.
+     * @param inputStream bytes read from here are sent to the serial port.
+     * @param outputStream bytes received from the serial port are written, and flushed, here.
+     * @throws IOException
+     */
+    public synchronized void bridge(InputStream inputStream, OutputStream outputStream) throws IOException {
+        if (isActive())
+            throw new IOException("Bridge already active");
+
+        startSession(Channels.newChannel(inputStream), Channels.newChannel(outputStream), outputStream);
+    }
+
+    /**
+     * Accepts local TCP clients, one at a time, and streams between each client and the serial port.
+     * The connection to the GlobalCache is opened for each client session.
+     * @param localPort TCP port to listen to.
+     * @param bindAddress local address to bind to, or null for all.
+     * @throws IOException
+     */
+    public synchronized void listen(int localPort, InetAddress bindAddress) throws IOException {
+        if (isActive())
+            throw new IOException("Bridge already active");
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, localPort));
+        acceptThread = new Thread(this::acceptLoop, "GlobalCacheSerialBridge-accept-" + localPort);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public void listen(int localPort) throws IOException {
+        listen(localPort, null);
+    }
+
+    public synchronized boolean isActive() {
+        return serverChannel != null || (upstream != null && upstream.isAlive()) || (downstream != null && downstream.isAlive());
+    }
+
+    /**
+     * @return Number of bytes sent to the serial port.
+     */
+    public long getBytesToDevice() {
+        return bytesToDevice.get();
+    }
+
+    /**
+     * @return Number of bytes received from the serial port.
+     */
+    public long getBytesFromDevice() {
+        return bytesFromDevice.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ServerSocketChannel server;
+        Thread accepter;
+        synchronized (this) {
+            server = serverChannel;
+            accepter = acceptThread;
+            serverChannel = null;
+            acceptThread = null;
+        }
+        if (server != null)
+            server.close();
+        if (accepter != null)
+            accepter.interrupt();
+        endSession();
+    }
+
+    private void acceptLoop() {
+        ServerSocketChannel server;
+        synchronized (this) {
+            server = serverChannel;
+        }
+        try {
+            while (server != null && server.isOpen()) {
+                SocketChannel client = server.accept();
+                logger.log(Level.INFO, "Client {0} connected", client.getRemoteAddress());
+                PumpThread up;
+                PumpThread down;
+                synchronized (this) {
+                    try {
+                        startSession(client, client, null);
+                    } catch (IOException ex) {
+                        logger.log(Level.WARNING, "Cannot connect to {0}: {1}", new Object[]{deviceAddress, ex.getMessage()});
+                        client.close();
+                        continue;
+                    }
+                    up = upstream;
+                    down = downstream;
+                }
+                up.join();
+                down.join();
+                logger.log(Level.INFO, "Client disconnected");
+            }
+        } catch (AsynchronousCloseException | InterruptedException ex) {
+            // close() called
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Accepting clients failed: {0}", ex.getMessage());
+        }
+    }
+
+    private void startSession(ReadableByteChannel localIn, WritableByteChannel localOut, OutputStream flushable) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.socket().connect(deviceAddress, timeout);
+        channel.socket().setTcpNoDelay(true);
+        deviceChannel = channel;
+        upstream = new PumpThread("upstream", localIn, channel, null, bytesToDevice, localIn);
+        downstream = new PumpThread("downstream", channel, localOut, flushable, bytesFromDevice, localOut);
+        upstream.start();
+        downstream.start();
+    }
+
+    /**
+     * Ends the present session, if any, by closing the channels; the pump threads then terminate.
+     * (A pump blocked reading a local InputStream terminates when the stream delivers, or is closed.)
+     */
+    private synchronized void endSession() {
+        closeQuietly(deviceChannel);
+        deviceChannel = null;
+        if (upstream != null)
+            closeQuietly(upstream.local);
+        if (downstream != null)
+            closeQuietly(downstream.local);
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.log(Level.FINE, ex.getMessage());
+        }
+    }
+
+    private class PumpThread extends Thread {
+        private final ReadableByteChannel source;
+        private final WritableByteChannel sink;
+        private final OutputStream flushable;
+        private final AtomicLong counter;
+        private final Channel local;
+        private final ByteBuffer buffer;
+
+        PumpThread(String name, ReadableByteChannel source, WritableByteChannel sink, OutputStream flushable, AtomicLong counter, Channel local) {
+            super("GlobalCacheSerialBridge-" + name);
+            this.source = source;
+            this.sink = sink;
+            this.flushable = flushable;
+            this.counter = counter;
+            this.local = local;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (source.read(buffer) >= 0) {
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        counter.addAndGet(sink.write(buffer));
+                    buffer.clear();
+                    if (flushable != null)
+                        flushable.flush();
+                }
+            } catch (AsynchronousCloseException ex) {
+                // the other direction, or close(), ended the session
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "{0} failed: {1}", new Object[]{getName(), ex.getMessage()});
+            }
+            endSession();
+        }
+    }
+}
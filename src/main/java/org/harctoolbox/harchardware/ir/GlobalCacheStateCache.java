@@ -0,0 +1,165 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-memory copy of the states of the relay and sensor connectors of a GlobalCache.
+ * The copy is kept up to date by the sensornotify and statechange messages the unit pushes,
+ * and by the results of setState. Only connectors not heard of during refreshInterval
+ * are queried, in a background thread; getState is otherwise answered from memory.
+ */
+public class GlobalCacheStateCache implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(GlobalCacheStateCache.class.getName());
+
+    public static final int DEFAULT_REFRESH_INTERVAL = 10000; // ms
+
+    private final GlobalCache globalCache;
+    private final int refreshInterval;
+    private final Map<String, Entry> states = new ConcurrentHashMap<>(16);
+    private final ScheduledExecutorService refreshExecutor;
+    private final GlobalCache.ResponseListener stateListener;
+
+    /**
+     * @param globalCache opened GlobalCache
+     * @param refreshInterval time in milliseconds a state is trusted without having been heard of;
+     * if &lt;= 0, there is no background refresh, and states are only updated by pushed messages.
+     */
+    public GlobalCacheStateCache(GlobalCache globalCache, int refreshInterval) {
+        this.globalCache = globalCache;
+        this.refreshInterval = refreshInterval;
+        stateListener = (GlobalCacheResponse response) -> {
+            if (response.getState() != GlobalCacheResponse.INVALID)
+                update(response.getModule(), response.getConnector(), response.getState());
+        };
+        globalCache.addResponseListener(stateListener);
+        if (refreshInterval > 0) {
+            refreshExecutor = Executors.newSingleThreadScheduledExecutor((runnable) -> {
+                Thread thread = new Thread(runnable, "GlobalCacheStateCache-" + globalCache.getIp());
+                thread.setDaemon(true);
+                return thread;
+            });
+            refreshExecutor.scheduleWithFixedDelay(this::refreshStale, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        } else
+            refreshExecutor = null;
+    }
+
+    public GlobalCacheStateCache(GlobalCache globalCache) {
+        this(globalCache, DEFAULT_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Returns the state of a connector, from memory if known.
+     * The first call for a connector queries the GlobalCache, and starts tracking it.
+     * @param module
+     * @param connector
+     * @return state, 0 or 1.
+     * @throws IOException
+     * @throws NoSuchTransmitterException
+     */
+    public int getState(int module, int connector) throws IOException, NoSuchTransmitterException {
+        Entry entry = states.get(module + ":" + connector);
+        return entry != null ? entry.state : query(module, connector);
+    }
+
+    /**
+     * Sets the state of a relay, and records it on success.
+     * @param module
+     * @param connector
+     * @param state
+     * @return success
+     * @throws IOException
+     * @throws NoSuchTransmitterException
+     */
+    public boolean setState(int module, int connector, int state) throws IOException, NoSuchTransmitterException {
+        boolean success = globalCache.setState(module, connector, state);
+        if (success)
+            update(module, connector, state == 0 ? 0 : 1);
+        return success;
+    }
+
+    /**
+     * Toggles the state of a relay, using the state in memory.
+     * @param module
+     * @param connector
+     * @return success
+     * @throws IOException
+     * @throws NoSuchTransmitterException
+     */
+    public boolean toggleState(int module, int connector) throws IOException, NoSuchTransmitterException {
+        return setState(module, connector, 1 - getState(module, connector));
+    }
+
+    /**
+     * Forgets all states; the next getState of every connector queries the GlobalCache.
+     */
+    public void invalidate() {
+        states.clear();
+    }
+
+    @Override
+    public void close() {
+        globalCache.removeResponseListener(stateListener);
+        if (refreshExecutor != null)
+            refreshExecutor.shutdownNow();
+    }
+
+    private int query(int module, int connector) throws IOException, NoSuchTransmitterException {
+        int state = globalCache.getState(module, connector);
+        update(module, connector, state);
+        return state;
+    }
+
+    private void update(int module, int connector, int state) {
+        Entry entry = states.computeIfAbsent(module + ":" + connector, (address) -> new Entry(module, connector));
+        entry.state = state;
+        entry.updated = System.currentTimeMillis();
+    }
+
+    private void refreshStale() {
+        long limit = System.currentTimeMillis() - refreshInterval;
+        states.values().stream().filter((entry) -> entry.updated <= limit).forEach((entry) -> {
+            try {
+                query(entry.module, entry.connector);
+            } catch (IOException | NoSuchTransmitterException | RuntimeException ex) {
+                logger.log(Level.WARNING, "Refreshing state of {0}:{1} failed: {2}", new Object[]{entry.module, entry.connector, ex.getMessage()});
+            }
+        });
+    }
+
+    private static class Entry {
+        private final int module;
+        private final int connector;
+        private volatile int state;
+        private volatile long updated;
+
+        Entry(int module, int connector) {
+            this.module = module;
+            this.connector = connector;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.harctoolbox.harchardware.ir;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.HarcHardwareException;
@@ -101,6 +102,10 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
     private final static String expectedProtocolVersion = "S01";
     private final static int emptyBufferSize = 62;
 
+    private final static int durationsPerBlock = emptyBufferSize / 2;
+    private final static int receiveBufferSize = 1024;
+    private final static int endOfSamples = 0xffff;
+
     private final static int powerPin = 5;
     private final static int receivePin = 3;
     private final static int sendingPin = 4;
@@ -112,6 +117,16 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
     private int IOdirections = -1;
     private int IOdata = 0;
     private boolean useSignalingLed;
+    private boolean persistentSession = false;
+    private Mode mode = Mode.unknown;
+    private boolean sendingModesEnabled = false;
+    private double currentFrequency = -1;
+    private final byte[] block = new byte[emptyBufferSize];
+    private final byte[] receiveBuffer = new byte[receiveBufferSize];
+    private int receivePosition = 0;
+    private int receiveLimit = 0;
+    private int[] receiveDurations = new int[0];
+    private double receivedFrequency;
 
     public IrToy() throws IOException {
         this(defaultPortName);
@@ -138,7 +153,24 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
         super(LocalSerialPortRaw.class, LocalSerialPort.canonicalizePortName(portName, defaultPortName), verbose, timeout != null ? timeout : defaultTimeout, baudRate, dataSize, stopBits, parity, flowControl);
     }
 
+    /**
+     * In a persistent session, the IrToy is left in sampling mode, with the sending options enabled,
+     * after a successful transmission, and the next transmission is started directly,
+     * without reset and setup. Also the modulation frequency is only set when it changes.
+     * The state is forgotten after failures and captures, which are then followed by a full setup.
+     * @param persistentSession
+     */
+    public void setPersistentSession(boolean persistentSession) {
+        this.persistentSession = persistentSession;
+    }
+
+    public boolean isPersistentSession() {
+        return persistentSession;
+    }
+
     private void goSamplingMode() throws IOException, HarcHardwareException {
+        mode = Mode.unknown;
+        sendingModesEnabled = false;
         send(cmdSamplingMode);
         try {
             Thread.sleep(10);
@@ -147,6 +179,7 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
         protocolVersion = readString(lengthProtocolVersionString);
         if (!protocolVersion.equals(expectedProtocolVersion))
             throw new HarcHardwareException("Unsupported IrToy protocol version: " + protocolVersion);
+        mode = Mode.sampling;
     }
 
     private void setupSendingModes() throws IOException {
@@ -156,6 +189,7 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
             send(cmdTransmitHandshake);
         if (transmitByteCountReportEnabled)
             send(cmdTransmitByteCountReport);
+        sendingModesEnabled = true;
     }
 
     private byte[] prepare3(byte cmd, int data) {
@@ -235,6 +269,9 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
     }
 
     public void reset(int times) throws IOException {
+        mode = Mode.unknown;
+        sendingModesEnabled = false;
+        currentFrequency = -1;
         for (int i = 0; i < times; i++)
             send(cmdReset);
         try {
@@ -242,6 +279,7 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
         } catch (InterruptedException ex) {
         }
         serialPort.flushInput();
+        mode = Mode.decoder;
     }
 
     private void send(byte[] buf) throws IOException {
@@ -259,52 +297,107 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
         //serialPort.flush();
     }
 
-    private byte[] toByteArray(int[] data) {
-        byte[] buf = new byte[2*data.length];
-        for (int i = 0; i < data.length; i++) {
-            int periods = (int)Math.round(data[i]/period);
-            buf[2*i] = (byte)(periods / 256);
-            buf[2*i+1] = (byte) (periods % 256);
+    /**
+     * Encodes the durations starting at index into the block, the last duration replaced by the 0xFFFF end marker.
+     * @return number of bytes put in the block.
+     */
+    private int encodeBlock(int[] data, int index) {
+        int count = Math.max(0, Math.min(durationsPerBlock, data.length - index));
+        for (int i = 0; i < count; i++) {
+            int periods = (int) Math.round(data[index + i] / period);
+            block[2*i] = (byte) (periods / 256);
+            block[2*i+1] = (byte) (periods % 256);
         }
-        // REPLACE last gap by 0xFFFF
-        buf[2*data.length-2] = endOfData;
-        buf[2*data.length-1] = endOfData;
-        return buf;
+        if (index + count == data.length && count > 0) {
+            // REPLACE last gap by 0xFFFF
+            block[2*count-2] = endOfData;
+            block[2*count-1] = endOfData;
+        }
+        return 2*count;
+    }
+
+    /**
+     * Reads what is available from the serial port, at least one byte, into receiveBuffer,
+     * keeping unconsumed bytes.
+     */
+    private void fillReceiveBuffer() throws IOException {
+        int remaining = receiveLimit - receivePosition;
+        System.arraycopy(receiveBuffer, receivePosition, receiveBuffer, 0, remaining);
+        receivePosition = 0;
+        receiveLimit = remaining;
+        int n = serialPort.readBytes(receiveBuffer, receiveLimit, receiveBuffer.length - receiveLimit);
+        if (n == 0)
+            throw new TimeoutException("Timeout in IrToy receive");
+        if (n < 0)
+            throw new IOException("IrToy: end of stream");
+        receiveLimit += n;
     }
 
+    /**
+     * Receives a signal, decoding the 16 bit tick counts directly from the receive buffer,
+     * which is filled with whatever the serial port delivers. The frequency report is requested
+     * as soon as the end marker is seen, and read from the same buffer.
+     */
     private int[] recv() throws IOException  {
         try {
-            int[] array = new int[captureMaxSize];
+            if (receiveDurations.length != captureMaxSize)
+                receiveDurations = new int[captureMaxSize];
+            receivePosition = 0;
+            receiveLimit = 0;
             int size = 0;
+            long onTimes = 0;
+            boolean ended = false;
             stopCaptureRequest = false;
             setPin(receivePin, true);
-            for (int i = 0; i < captureMaxSize; i++) { // if leaving here, reset is needed.
+            while (!ended && size < captureMaxSize) { // if leaving here without end marker, reset is needed.
                 if (stopCaptureRequest)
                     return null;
-                int val = read2Bytes(); // throws TimeoutException
-                int ms = (int) Math.round(val * period);
-                array[i] = ms;
-                size++;
-                if (val == 0xffff)
-                    // Only way for timeout, 1.4 seconds. Too long for most use cases ... :-\
-                    break;
+                if (receiveLimit - receivePosition < 2)
+                    fillReceiveBuffer(); // throws TimeoutException as per beginTimeout
+                while (receiveLimit - receivePosition >= 2 && size < captureMaxSize) {
+                    int val = 256*byte2unsignedInt(receiveBuffer[receivePosition]) + byte2unsignedInt(receiveBuffer[receivePosition+1]);
+                    receivePosition += 2;
+                    int us = (int) Math.round(val * period);
+                    receiveDurations[size] = us;
+                    if (size % 2 == 0)
+                        onTimes += us;
+                    size++;
+                    if (val == endOfSamples) {
+                        // Only way for timeout, 1.4 seconds. Too long for most use cases ... :-\
+                        ended = true;
+                        break;
+                    }
+                }
             }
-
-            int[] result = new int[size];
-            System.arraycopy(array, 0, result, 0, size);
-            return result;
+            if (size % 2 != 0)
+                onTimes -= receiveDurations[size - 1]; // the end marker, not a flash
+            try {
+                receivedFrequency = readFrequencyReport(onTimes);
+            } catch (TimeoutException ex) {
+                // not to be taken for the begin timeout by capture(): a signal was received
+                throw new IOException("IrToy: no frequency report", ex);
+            }
+            return Arrays.copyOf(receiveDurations, size);
         } finally {
             setPin(receivePin, false);
         }
     }
 
-    private double getFrequency(int onTimes) throws IOException {
+    private int readBuffered2Bytes() throws IOException {
+        while (receiveLimit - receivePosition < 2)
+            fillReceiveBuffer();
+        int val = 256*byte2unsignedInt(receiveBuffer[receivePosition]) + byte2unsignedInt(receiveBuffer[receivePosition+1]);
+        receivePosition += 2;
+        return val;
+    }
+
+    private double readFrequencyReport(long onTimes) throws IOException {
         send(cmdFrequencyReport);
-        /*int t1 =*/ read2Bytes();
-        /*int t2 =*/ read2Bytes();
-        /*int t3 =*/ read2Bytes();
-        int count = read2Bytes();
-        return count/IrCoreUtils.microseconds2seconds(onTimes) ;
+        /*int t1 =*/ readBuffered2Bytes();
+        /*int t2 =*/ readBuffered2Bytes();
+        /*int t3 =*/ readBuffered2Bytes();
+        int count = readBuffered2Bytes();
+        return count/IrCoreUtils.microseconds2seconds(onTimes);
     }
 
     @Override
@@ -317,18 +410,16 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
             data = recv(); // throws TimeoutException as per beginTimeout
         } catch (TimeoutException ex) {
             return null;
+        } finally {
+            // possibly left in the middle of a sample stream
+            mode = Mode.unknown;
         }
         if (stopCaptureRequest || data == null)
             return null;
 
-        int sum = 0;
-        for (int i = 0; i < data.length / 2; i++) {
-            sum += data[2 * i];
-        }
-        double frequency = getFrequency(sum);
         ModulatedIrSequence seq = null;
         try {
-            seq = new ModulatedIrSequence(data, frequency);
+            seq = new ModulatedIrSequence(data, receivedFrequency);
         } catch (OddSequenceLengthException ex) {
             for (int i = 0; i < data.length; i++)
                 logger.log(Level.FINEST, "data[{0}] = {1}", new Object[]{i, data[i]});
@@ -354,30 +445,44 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
     }
 
     private boolean transmit(int[] data, double frequency) throws IOException, HarcHardwareException {
-        if (frequency > 0)
+        if (!(persistentSession && mode == Mode.sampling && sendingModesEnabled)) {
+            reset(1);
+            goSamplingMode();
+            setupSendingModes();
+        }
+        if (frequency > 0 && !(persistentSession && frequency == currentFrequency)) {
             setFrequency(frequency);
-        return transmit(data);
+            currentFrequency = frequency;
+        }
+        boolean success = false;
+        try {
+            success = transmit(data);
+        } finally {
+            if (!success)
+                mode = Mode.unknown;
+        }
+        return success;
     }
 
     private boolean transmit(int[] data) throws IOException, HarcHardwareException {
-        reset(1);
-        goSamplingMode();
-        setupSendingModes();
         setPin(sendingPin, true);
-        byte[] buf = toByteArray(data);
+        // The first block is encoded before, each following one while the IrToy is working off the previous one.
+        int index = 0;
+        int blockLength = encodeBlock(data, index);
+        // In a persistent session, the IrToy has stayed in sampling mode, streaming any IR it received.
+        serialPort.flushInput();
         send(cmdTransmit);
         boolean succcess = true;
 
         try {
             if (transmitHandshakeEnabled) {
-                int bytesSent = 0;
-                while (bytesSent < buf.length) {
+                while (blockLength > 0) {
                     int noBytes = readByte(); // number of bytes free in buffer, the number we should send
                     if (noBytes != emptyBufferSize)
                         continue;
-                    int toSend = Math.min(noBytes, buf.length - bytesSent);
-                    send(buf, bytesSent, toSend);
-                    bytesSent += toSend;
+                    send(block, 0, blockLength);
+                    index += durationsPerBlock;
+                    blockLength = encodeBlock(data, index);
                 }
             }
             int noBytes = readByte();
@@ -434,12 +539,14 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
 
     public String selftest() throws IOException {
         reset(5);
+        mode = Mode.unknown;
         send(cmdSelfTest);
         return readString(lengthSelftestVersionString);
     }
 
     public void bootloaderMode() throws IOException {
         reset(5);
+        mode = Mode.unknown;
         send(cmdBootloaderMode);
     }
 
@@ -510,4 +617,10 @@ public final class IrToy extends IrSerial<LocalSerialPortRaw> implements IRawIrS
     public void setDebug(int debug) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
+
+    private enum Mode {
+        unknown,
+        decoder,
+        sampling
+    }
 }
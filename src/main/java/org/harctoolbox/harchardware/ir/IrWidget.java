@@ -58,16 +58,15 @@ public class IrWidget implements IHarcHardware, ICapture {
     private static final int MASK = 0x3F;
     private static final int SHORT_DELAY = 20;
     private static final int LONG_DELAY = 100; // was 100, 200 by Kevin
-    private static final int INVALID = -1;
-    private static final int EMERGENCY_TIMEOUT = 10000;
-    private final static int ESTIMATED_TICKS_PER_PULSE = 100;
+    private static final int MAX_READ_TIMEOUT = 100;
+    private static final int READ_BUFFER_SIZE = 1024;
 
     private final CommPortIdentifier portIdentifier;
     private RXTXPort serialPort;
     private int debug;
-    private byte[] data;
+    private final byte[] data = new byte[READ_BUFFER_SIZE];
+    private final TickDecoder decoder = new TickDecoder();
     private int[] times;
-    private int dataLength;
     private double frequency;
     private boolean stopRequested;
     private boolean verbose;
@@ -208,12 +207,15 @@ public class IrWidget implements IHarcHardware, ICapture {
 
     /**
      * Captures a signal using the given timeout values, and returns it as a ModulatedIrSequence.
+     * Reads block on the serial port, with a receive timeout of at most MAX_READ_TIMEOUT.
+     * The counts are decoded as they arrive, and the capture completes as soon as
+     * the signal itself has been silent for the ending timeout.
      *
-     * @return ModulatedIrSequence
+     * @return ModulatedIrSequence, or null if nothing happened within the begin timeout.
      * @throws IOException
      */
     @Override
-    @SuppressWarnings({"UseOfSystemOutOrSystemErr", "empty-statement"})
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
     public ModulatedIrSequence capture() throws IOException {
         if (lowerDtrRts)
             enableIrWidgetMode();
@@ -223,54 +225,18 @@ public class IrWidget implements IHarcHardware, ICapture {
         } catch (UnsupportedCommOperationException ex) {
             throw new ThisCannotHappenException(ex);
         }
-        //serialPort.enableReceiveTimeout(beginTimeout);
+        serialPort.enableReceiveTimeout(Math.max(1, Math.min(Math.min(beginTimeout, endingTimeout), MAX_READ_TIMEOUT)));
+        long start = System.currentTimeMillis();
+        stopRequested = false;
 
         try {
-            while (true) {
-                int maxToRead = captureMaxSize * ESTIMATED_TICKS_PER_PULSE;
-                data = new byte[maxToRead];
-
-                int readByte = inputStream.read(); // blocks. If IOException we really have a problem, so don't catch it
-                if (readByte == INVALID) { // timeout
+            while (!stopRequested) {
+                if (!read(inputStream, start)) {
                     if (verbose)
                         System.err.println("TIMEOUT");
                     return null;
                 }
-                data[0] = (byte) readByte;
-
-                byte last = (byte) INVALID;
-                long lastEvent = System.currentTimeMillis();
-                stopRequested = false;
-                int bytesRead = 1;
-
-                // Runs in spin-wait, but only when really capturing
-                while (bytesRead < maxToRead && !stopRequested) {
-                    if (inputStream.available() == 0) {
-                        if (EMERGENCY_TIMEOUT > 0 && System.currentTimeMillis() - lastEvent >= EMERGENCY_TIMEOUT)
-                            break;
-
-                        continue;
-                    }
-                    int noRead = inputStream.read(data, bytesRead, maxToRead - bytesRead);
-                    bytesRead += noRead;
-                    int i = 0;
-                    while (i < noRead && data[bytesRead - noRead + i] == last) {
-                        i++;
-                    }
-
-                    if (i == noRead) {
-                        // no new information has arrived
-                        if (System.currentTimeMillis() - lastEvent >= endingTimeout)
-                            break;
-                    } else {
-                        // something happened
-                        lastEvent = System.currentTimeMillis();
-                    }
-
-                    last = data[bytesRead - 1];
-                }
-                boolean success = compute(bytesRead);
-                if (success) {
+                if (decoder.finish()) {
                     try {
                         ModulatedIrSequence modulatedIrSequence = new ModulatedIrSequence(new IrSequence(times), frequency, null);
                         if (verbose)
@@ -279,10 +245,10 @@ public class IrWidget implements IHarcHardware, ICapture {
                     } catch (OddSequenceLengthException ex) {
                         throw new ThisCannotHappenException(ex);
                     }
-                } else
-                    // useless data received, make another attempt
-                    ;
+                }
+                // useless data received, make another attempt
             }
+            return null;
         } finally {
             if (serialPort != null && lowerDtrRts)
                 disableIrWidgetMode();
@@ -290,6 +256,33 @@ public class IrWidget implements IHarcHardware, ICapture {
         }
     }
 
+    /**
+     * Feeds the decoder, until the signal has ended, captureMaxSize durations have been received,
+     * or stop is requested. If no input arrives, a started signal is considered ended after endingTimeout.
+     * @return false if nothing happened within the begin timeout (measured from start).
+     */
+    private boolean read(InputStream inputStream, long start) throws IOException {
+        decoder.reset();
+        int endingTicks = (int) (IrCoreUtils.milliseconds2microseconds(endingTimeout) / MICROS_PER_TICK);
+        long lastInput = start;
+        while (!stopRequested) {
+            int noRead = inputStream.read(data, 0, data.length); // blocks, at most the receive timeout
+            long now = System.currentTimeMillis();
+            if (noRead <= 0) {
+                if (decoder.isActive() ? now - lastInput >= endingTimeout : now - start >= beginTimeout)
+                    break;
+                continue;
+            }
+            lastInput = now;
+            for (int i = 0; i < noRead; i++)
+                if (decoder.add(data[i], endingTicks))
+                    return true;
+            if (!decoder.isActive() && now - start >= beginTimeout)
+                break;
+        }
+        return decoder.isActive();
+    }
+
     /**
      * The IrWidget does not support versions.
      * @return null
@@ -322,71 +315,118 @@ public class IrWidget implements IHarcHardware, ICapture {
         return true;
     }
 
-    private boolean compute(int noBytes) {
-        if (noBytes == 0)
-            return false;
+    /**
+     * Turns the counts, one byte per tick of MICROS_PER_TICK, into durations while they arrive.
+     * Until the modulation frequency is known at the end, flashes are kept as the sum of their counts,
+     * and gaps as the number of silent ticks, together with the counts of the bordering ticks,
+     * which are only partially flashing.
+     */
+    private class TickDecoder {
+        private int[] counts = new int[0]; // flash: sum of counts; gap: number of silent ticks
+        private int[] edges = new int[0]; // gap: count of the tick before << 8 | count of the tick after
+        private int length;
+        private boolean started;
+        private boolean inFlash;
+        private int previousByte;
+        private int flashCount;
+        private int silentTicks;
+        private int edgeBefore;
+        private int lastCount; // count of the previous tick
+        private int secondLastCount;
+        private int ticks;
+        private long periods;
+        private int bins;
+
+        void reset() {
+            if (counts.length != captureMaxSize + 1) {
+                counts = new int[captureMaxSize + 1];
+                edges = new int[captureMaxSize + 1];
+            }
+            length = 0;
+            started = false;
+            inFlash = false;
+            ticks = 0;
+            periods = 0;
+            bins = 0;
+        }
 
-        // replace the existing, incremental data by actual count in the intervals
-        for (int i = 0; i < noBytes - 1; i++)
-            data[i] = (byte) (MASK & (data[i + 1] - data[i]));
-        dataLength = (noBytes - 1) & ~1;
+        /**
+         * @return true if a flash has been seen.
+         */
+        boolean isActive() {
+            return inFlash || length > 0;
+        }
 
-        // Compute frequency
-        int periods = 0;
-        int bins = 0;
-        int pulses = 1;
-        int gaps = 0;
+        /**
+         * @param b next byte from the IrWidget
+         * @param endingTicks number of silent ticks ending the signal
+         * @return true if the signal is complete.
+         */
+        boolean add(byte b, int endingTicks) {
+            int value = b;
+            if (!started) {
+                started = true;
+                previousByte = value;
+                return false;
+            }
+            int count = MASK & (value - previousByte);
+            previousByte = value;
 
-        for (int i = 1; i < dataLength; i++) {
-            if (i < dataLength - 1 && data[i] > 0 && data[i - 1] > 0 && data[i + 1] > 0) {
-                periods += data[i];
+            // Modulation frequency, from ticks flashing all the time, i.e. with flashing neighbors
+            if (ticks >= 2 && count > 0 && lastCount > 0 && secondLastCount > 0) {
+                periods += lastCount;
                 bins++;
             }
-            if (data[i] > 0 && data[i - 1] == 0)
-                pulses++;
-            if (data[i] == 0 && data[i - 1] > 0)
-                gaps++;
-        }
-
-        if (bins == 0)
-            return false;
-
-        frequency = periods / IrCoreUtils.microseconds2seconds(bins * MICROS_PER_TICK);
-        times = new int[2 * gaps];
-        int index = 0;
-        int currentCount = 0;
-        int currentGap = 0;
-        boolean previousState = false;
-        boolean currentState = false;
-        for (int i = 0; i < dataLength; i++) {
-            currentState = data[i] > 0;
-            if (currentState == previousState) {
-                if (currentState)
-                    currentCount += data[i];
-                else
-                    currentGap += MICROS_PER_TICK;
-            } else {
-                if (currentState) { // starting flash
-                    currentGap += gapDuration(data[i]);
-                    if (index > 0) {
-                        times[index] = -currentGap;
-                        index++;
+            ticks++;
+            secondLastCount = lastCount;
+
+            if (count > 0) {
+                if (inFlash)
+                    flashCount += count;
+                else { // starting flash
+                    if (length > 0) {
+                        counts[length] = silentTicks;
+                        edges[length] = edgeBefore << 8 | count;
+                        length++;
                     }
-                    currentCount = data[i];
-                    currentGap = 0;
-                } else { // starting gap
-                    times[index] = pulseDuration(currentCount);
-                    index++;
-                    currentGap = gapDuration(data[i - 1]) + MICROS_PER_TICK;
-                    currentCount = 0;
+                    flashCount = count;
+                    inFlash = true;
                 }
-            }
-            previousState = currentState;
+            } else if (inFlash) { // starting gap
+                counts[length] = flashCount;
+                length++;
+                edgeBefore = lastCount;
+                silentTicks = 1;
+                inFlash = false;
+            } else
+                silentTicks++;
+
+            lastCount = count;
+            return length > 0 && (inFlash ? length >= captureMaxSize : (silentTicks >= endingTicks || length >= captureMaxSize));
         }
-        if (index < 2 * gaps)
-            times[index] = currentState ? pulseDuration(currentCount) : -currentGap;
 
-        return true;
+        /**
+         * Computes frequency and times.
+         * A signal ending with a flash (i.e. cut by captureMaxSize or stop) loses its last flash.
+         * @return false if the data is useless.
+         */
+        boolean finish() {
+            if (bins == 0 || length == 0)
+                return false;
+
+            frequency = periods / IrCoreUtils.microseconds2seconds(bins * MICROS_PER_TICK);
+            int size = inFlash ? length & ~1 : length + 1;
+            times = new int[size];
+            for (int i = 0; i < size; i++) {
+                if (i % 2 == 0)
+                    times[i] = pulseDuration(counts[i]);
+                else if (i < length)
+                    times[i] = -(gapDuration(edges[i] >> 8) + counts[i] * MICROS_PER_TICK + gapDuration(edges[i] & 0xFF));
+                else // trailing gap
+                    times[i] = -(gapDuration(edgeBefore) + silentTicks * MICROS_PER_TICK);
+            }
+            return true;
+        }
     }
 
     private int pulseDuration(int pulses) {
@@ -17,6 +17,7 @@ this program. If not, see http://www.gnu.org/licenses/.
 
 package org.harctoolbox.harchardware.ir;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -25,7 +26,7 @@ import org.harctoolbox.ircore.Pronto;
 
 /**
  * A <a href="http://www.lirc.org">LIRC</a> client, talking to a remote LIRC
- * server through a TCP port.
+ * server through a TCP port, or to a local one through its Unix domain socket.
  */
 public class LircCcfClient extends LircClient implements IRawIrSender {
 
@@ -33,6 +34,17 @@ public class LircCcfClient extends LircClient implements IRawIrSender {
         super(hostname, port, verbose, timeout);
     }
 
+    /**
+     * Connects to lircd through a Unix domain socket, requires Java 16 or later.
+     * @param socket Unix domain socket of lircd, typically /var/run/lirc/lircd.
+     * @param verbose
+     * @param timeout
+     * @throws IOException
+     */
+    public LircCcfClient(File socket, boolean verbose, Integer timeout) throws IOException {
+        super(socket, verbose, timeout);
+    }
+
     public LircCcfClient(String hostname, Integer port, boolean verbose, Integer timeout) throws IOException {
         this(InetAddress.getByName(hostname), port, verbose, timeout);
     }
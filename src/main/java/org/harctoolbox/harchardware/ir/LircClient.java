@@ -23,26 +23,42 @@ import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
 import com.beust.jcommander.internal.DefaultConsole;
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.IHarcHardware;
 import org.harctoolbox.harchardware.Version;
 import org.harctoolbox.harchardware.comm.TcpSocketChannel;
 import org.harctoolbox.harchardware.comm.TcpSocketPort;
+import org.harctoolbox.harchardware.comm.UnixDomainSocketChannel;
 import org.harctoolbox.irp.IrpUtils;
 
 /**
  * A <a href="http://www.lirc.org">LIRC</a> client, talking to a remote LIRC
- * server through a TCP port.
+ * server through a TCP port, or to a local one through its Unix domain socket.
  * Functionally, it resembles the command line program irsend.
+ * The connection is kept open between commands, and commands may be pipelined.
  */
 public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSenderStop, ITransmitter {
 
@@ -51,13 +67,8 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
     public final static int lircDefaultPort = 8765;
     public final static String defaultLircIP = "127.0.0.1"; // localhost
     public final static int defaultTimeout = 5000; // WinLirc can be really slow...
-    private final static int P_BEGIN = 0;
-    private final static int P_MESSAGE = 1;
-    private final static int P_STATUS = 2;
-    private final static int P_DATA = 3;
-    private final static int P_N = 4;
-    private final static int P_DATA_N = 5;
-    private final static int P_END = 6;
+    public final static int eventQueueSize = 64;
+    private final static int reconnectDelay = 1000; // ms, for event listeners
     private static JCommander argumentParser;
     private static CommandLineArgs commandLineArgs = new CommandLineArgs();
 
@@ -129,8 +140,9 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
         String[] splitAddress = commandLineArgs.address.split(":");
         String hostname = splitAddress[0];
         int port = splitAddress.length == 2 ? Integer.parseInt(splitAddress[1]) : commandLineArgs.port;
-        try (LircClient lircClient = new LircClient(InetAddress.getByName(hostname), port,
-                commandLineArgs.verbose, commandLineArgs.timeout)) {
+        try (LircClient lircClient = hostname.startsWith("/")
+                ? new LircClient(new File(hostname), commandLineArgs.verbose, commandLineArgs.timeout)
+                : new LircClient(InetAddress.getByName(hostname), port, commandLineArgs.verbose, commandLineArgs.timeout)) {
 
             if (commandLineArgs.listen) {
                 lircClient.readLoop();
@@ -200,15 +212,49 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
 
     private InetAddress inetAddress;
 
+    /**
+     * If non-null, lircd is reached through this Unix domain socket instead of TCP.
+     */
+    private String socketPath = null;
+
     private String lastRemote = null;
     private String lastCommand = null;
 
     private String version;
 
-    private LircTransmitter lircTransmitter;
+    /**
+     * Connection to lircd, kept between commands; guarded by this.
+     */
+    private Connection connection = null;
+
+    /**
+     * Serializes the writing of commands, keeping pendingCommands in the order of the socket.
+     */
+    private final Object outputLock = new Object();
+
+    /**
+     * Held from SET_TRANSMITTERS until the command using the transmitters has been answered,
+     * so that commands of other threads cannot come in between.
+     */
+    private final Object transmitLock = new Object();
+
+    /**
+     * Commands written, waiting for their replies, oldest first.
+     */
+    private final Deque<PendingCommand> pendingCommands = new ArrayDeque<>(8);
+
+    private final List<EventListener> eventListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Received events, from the reader to the dispatcher thread.
+     */
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<>(eventQueueSize);
+
+    private final AtomicLong droppedEvents = new AtomicLong(0L);
+
+    private EventDispatcherThread eventDispatcherThread = null;
 
     public LircClient(InetAddress hostname, Integer port, boolean verbose, Integer timeout) throws IOException {
-        this.lircTransmitter = new LircTransmitter();
         this.timeout = timeout != null ? timeout : defaultTimeout;
         //lircServerIp = (hostname != null) ? hostname : defaultLircIP;
         this.inetAddress = hostname != null ? hostname : InetAddress.getByName(defaultLircIP);
@@ -218,6 +264,21 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
         version = (result == null || result.length == 0) ? null : result[0];
     }
 
+    /**
+     * Connects to lircd through a Unix domain socket, requires Java 16 or later.
+     * @param socket Unix domain socket of lircd, typically /var/run/lirc/lircd.
+     * @param verbose
+     * @param timeout
+     * @throws IOException
+     */
+    public LircClient(File socket, boolean verbose, Integer timeout) throws IOException {
+        this.timeout = timeout != null ? timeout : defaultTimeout;
+        this.socketPath = socket.getPath();
+        this.verbose = verbose;
+        String[] result = sendCommand("VERSION", false);
+        version = (result == null || result.length == 0) ? null : result[0];
+    }
+
     public LircClient(String hostname, Integer port, boolean verbose, Integer timeout) throws UnknownHostException, IOException {
         this(InetAddress.getByName(hostname), port, verbose, timeout);
     }
@@ -238,8 +299,21 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
         this(InetAddress.getByName(hostname));
     }
 
+    /**
+     * Closes the connection to lircd; a subsequent command opens a new one.
+     */
     @Override
     public void close() {
+        Connection channel;
+        synchronized (this) {
+            channel = connection;
+            if (eventDispatcherThread != null) {
+                eventDispatcherThread.interrupt();
+                eventDispatcherThread = null;
+            }
+        }
+        if (channel != null)
+            disconnect(channel, new IOException("LircClient closed"));
     }
 
     @Override
@@ -292,164 +366,204 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
     }
 
 
+    /**
+     * Subscribes to the signals received by lircd, as broadcast on the connection.
+     * The listeners are invoked, in order, from a single dispatcher thread.
+     * If they do not keep up, the queue (eventQueueSize) overflows:
+     * then repeats are dropped, and otherwise the oldest event.
+     * The connection is reestablished if it drops.
+     * @param listener
+     * @throws IOException if lircd cannot be reached.
+     */
+    public synchronized void addEventListener(EventListener listener) throws IOException {
+        eventListeners.add(listener);
+        connection();
+        if (eventDispatcherThread == null) {
+            eventDispatcherThread = new EventDispatcherThread();
+            eventDispatcherThread.start();
+        }
+    }
+
+    public synchronized void removeEventListener(EventListener listener) {
+        eventListeners.remove(listener);
+    }
+
+    /**
+     * @return Number of events dropped since the queue was full.
+     */
+    public long getDroppedEvents() {
+        return droppedEvents.get();
+    }
+
+    private void offerEvent(Event event) {
+        if (eventListeners.isEmpty())
+            return;
+
+        while (!events.offer(event)) {
+            droppedEvents.incrementAndGet();
+            if (event.getRepeat() > 0)
+                return;
+            events.poll();
+        }
+    }
+
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     protected void readLoop() throws IOException {
-        TcpSocketChannel tcpSocketChannel = new TcpSocketChannel(inetAddress, lircPort,
-                0 /*timeout*/, verbose, TcpSocketPort.ConnectionMode.keepAlive);
-        tcpSocketChannel.connect();
-        //OutputStream outToServer = tcpSocketChannel.getOut();
-        BufferedReader inFromServer = tcpSocketChannel.getBufferedIn();
-        if (inFromServer == null)
-            throw new IOException("Could not open socket connection to LIRC server " + inetAddress.getCanonicalHostName());
-        while (true) {
-            String line = inFromServer.readLine();
-            System.out.println(line);
+        Connection channel = new Connection();
+        try {
+            BufferedReader inFromServer = channel.inFromServer;
+            String line;
+            while ((line = inFromServer.readLine()) != null)
+                System.out.println(line);
+        } finally {
+            channel.close();
         }
     }
 
+    /**
+     * Sends a command to lircd on the persistent connection, and waits for its reply.
+     * Commands from several threads are pipelined; the replies are matched to the commands in FIFO order.
+     * A dropped connection is reestablished at the next command.
+     * @param packet command, without line terminator.
+     * @param oneWord if true, keep only the last word of each data line.
+     * @return data lines of the reply, or null if the command failed.
+     * @throws IOException if lircd cannot be reached.
+     */
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     protected final String[] sendCommand(String packet, boolean oneWord) throws IOException {
         if (verbose)
-            System.err.println("Sending command `" + packet + "' to Lirc@" + inetAddress.getCanonicalHostName());
+            System.err.println("Sending command `" + packet + "' to Lirc@" + getServerName());
 
-        TcpSocketChannel tcpSocketChannel = new TcpSocketChannel(inetAddress, lircPort,
-                timeout, verbose, TcpSocketPort.ConnectionMode.justInTime);
-        tcpSocketChannel.connect();
-        OutputStream outToServer = tcpSocketChannel.getOut();
-        BufferedReader inFromServer = tcpSocketChannel.getBufferedIn();
-        if (outToServer == null || inFromServer == null)
-            throw new IOException("Could not open socket connection to LIRC server " + inetAddress.getCanonicalHostName());
+        PendingCommand pending = new PendingCommand(packet, oneWord);
+        submit(pending);
+        String[] result;
+        try {
+            result = pending.future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            synchronized (pendingCommands) {
+                pendingCommands.remove(pending);
+            }
+            logger.log(Level.SEVERE, "Sockettimeout Lirc: no reply to {0} within {1} ms", new Object[]{packet, timeout});
+            result = null;
+        } catch (ExecutionException ex) {
+            logger.log(Level.SEVERE, "Couldn''t read from {0}: {1}", new Object[]{getServerName(), ex.getCause().getMessage()});
+            result = null;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
+        }
+        logger.log(Level.INFO, "Lirc command {0}", result != null ? "succeded." : "failed.");
 
-        tcpSocketChannel.sendString(packet + '\n');
+        if (verbose)
+            System.err.println("Lirc command " + (result != null ? "succeded." : "failed."));
+        return result;
+    }
 
-        ArrayList<String> result = new ArrayList<>(8);
-        int status = 0;
-        try {
-            int state = P_BEGIN;
-            int n = 0;
-            boolean done = false;
-            int dataN = -1;
-
-            while (!done) {
-                String string = inFromServer.readLine();
-                if (verbose)
-                    System.err.println("Received `" + string + "'");
-                if (string == null) {
-                    done = true;
-                    status = -1;
-                } else {
-                    OUTER:
-                    switch (state) {
-                        case P_BEGIN:
-                            if (!string.equals("BEGIN")) {
-                                logger.info("!begin");
-                                continue;
-                            }
-                            state = P_MESSAGE;
-                            break;
-                        case P_MESSAGE:
-                            if (!string.trim().equalsIgnoreCase(packet)) {
-                                state = P_BEGIN;
-                                continue;
-                            }
-                            state = P_STATUS;
-                            break;
-                        case P_STATUS:
-                            switch (string) {
-                                case "SUCCESS":
-                                    status = 0;
-                                    break;
-                                case "END":
-                                    status = 0;
-                                    done = true;
-                                    break;
-                                case "ERROR":
-                                    logger.log(Level.SEVERE, "command failed: {0}", packet);
-                                    status = -1;
-                                    break;
-                                default:
-                                    throw new BadPacketException();
-                            }
-                            state = P_DATA;
-                            break;
-                        case P_DATA:
-                            switch (string) {
-                                case "END":
-                                    done = true;
-                                    break OUTER;
-                                case "DATA":
-                                    state = P_N;
-                                    break OUTER;
-                            }
-                            throw new BadPacketException();
-                        case P_N:
-                            //errno = 0;
-                            dataN = Integer.parseInt(string);
-                            //result = new String[data_n];
-
-                            state = dataN == 0 ? P_END : P_DATA_N;
-                            break;
-                        case P_DATA_N:
-                            // Different LIRC servers seems to deliver commands in different
-                            // formats. Just take the last word.
-                            result.add(oneWord ? string.replaceAll("\\S*\\s+", "") : string);
-                            n++;
-                            if (n == dataN) {
-                                state = P_END;
-                            }
-                            break;
-                        case P_END:
-                            if (string.equals("END")) {
-                                done = true;
-                            } else {
-                                throw new BadPacketException();
-                            }
-                            break;
-                        default:
-                            assert false : "Unhandled case";
-                            break;
+    /**
+     * Queues the command, and writes it, in the same order, to the connection.
+     * If the write fails, the connection is reestablished, and the write retried, once.
+     */
+    private void submit(PendingCommand pending) throws IOException {
+        synchronized (outputLock) {
+            for (int attempt = 0; ; attempt++) {
+                Connection channel = connection();
+                synchronized (pendingCommands) {
+                    pendingCommands.add(pending);
+                }
+                try {
+                    channel.send(pending.packet + '\n');
+                    return;
+                } catch (IOException ex) {
+                    synchronized (pendingCommands) {
+                        pendingCommands.remove(pending);
                     }
+                    disconnect(channel, ex);
+                    if (attempt > 0)
+                        throw ex;
+                    logger.log(Level.INFO, "Reconnecting to {0}", getServerName());
                 }
             }
-        } catch (BadPacketException e) {
-            logger.severe("bad return packet");
-            status = -1;
-        } catch (SocketTimeoutException e) {
-            logger.log(Level.SEVERE, "Sockettimeout Lirc: {0}", e.getMessage());
-            result = null;
-            status = -1;
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Couldn't read from {0}", inetAddress.getCanonicalHostName());
-            status = -1;
-        } finally {
-            try {
-                tcpSocketChannel.close(true);
-            } catch (IOException e) {
-                logger.severe(e.getMessage());
-            }
         }
-        logger.log(Level.INFO, "Lirc command {0}", status == 0 ? "succeded." : "failed.");
+    }
 
-        if (verbose)
-            System.err.println("Lirc command " + (status == 0 ? "succeded." : "failed."));
-        return status == 0 && result != null ? result.toArray(new String[0]) : null;
+    private synchronized Connection connection() throws IOException {
+        if (connection == null) {
+            Connection channel = new Connection();
+            connection = channel;
+            new ReplyReaderThread(channel).start();
+        }
+        return connection;
+    }
+
+    private String getServerName() {
+        return socketPath != null ? socketPath : inetAddress.getCanonicalHostName();
+    }
+
+    private String getServerId() {
+        return socketPath != null ? socketPath : inetAddress.getHostAddress() + ":" + lircPort;
+    }
+
+    /**
+     * Closes the connection, if still current, and fails the commands waiting for replies on it.
+     */
+    private void disconnect(Connection channel, IOException reason) {
+        synchronized (this) {
+            if (connection != channel)
+                return;
+            connection = null;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.severe(ex.getMessage());
+        }
+        List<PendingCommand> failed;
+        synchronized (pendingCommands) {
+            failed = new ArrayList<>(pendingCommands);
+            pendingCommands.clear();
+        }
+        failed.forEach((pending) -> {
+            pending.future.completeExceptionally(reason);
+        });
+    }
+
+    /**
+     * Completes the first waiting command matching the echoed command of the reply.
+     */
+    private void dispatch(String message, String[] data) {
+        PendingCommand pending = null;
+        synchronized (pendingCommands) {
+            for (Iterator<PendingCommand> it = pendingCommands.iterator(); it.hasNext();) {
+                PendingCommand candidate = it.next();
+                if (message.trim().equalsIgnoreCase(candidate.packet)) {
+                    it.remove();
+                    pending = candidate;
+                    break;
+                }
+            }
+        }
+        if (pending == null) {
+            logger.log(Level.INFO, "Unexpected reply to {0}", message);
+            return;
+        }
+        if (data != null && pending.oneWord)
+            for (int i = 0; i < data.length; i++)
+                // Different LIRC servers seems to deliver commands in different
+                // formats. Just take the last word.
+                data[i] = data[i].replaceAll("\\S*\\s+", "");
+        pending.future.complete(data);
     }
 
     @Override
     public boolean sendIrCommand(String remote, String command, int count, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
         this.lastRemote = remote;
         this.lastCommand = command;
-        if (transmitter != null) {
-            if (!LircTransmitter.class.isInstance(transmitter))
-                throw new NoSuchTransmitterException(transmitter);
-            LircTransmitter trans = (LircTransmitter) transmitter;
-            if (!trans.isTrivial()) {
-                boolean result = setTransmitters(transmitter);
-                if (!result)
-                    throw new NoSuchTransmitterException("Error selecting transmitter " + transmitter);
-            }
+        LircTransmitter lircTransmitter = toLircTransmitter(transmitter);
+        synchronized (transmitLock) {
+            if (!setTransmitters(lircTransmitter))
+                throw new NoSuchTransmitterException("Error selecting transmitter " + transmitter);
+            return sendCommand("SEND_ONCE " + remote + " " + command + " " + (count - 1), false) != null;
         }
-        return sendCommand("SEND_ONCE " + remote + " " + command + " " + (count - 1), false) != null;
     }
 
     public boolean sendIrCommand(String remote, String command, int count, int connector) throws IOException, NoSuchTransmitterException {
@@ -460,13 +574,21 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
     public boolean sendIrCommandRepeat(String remote, String command, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
         this.lastRemote = remote;
         this.lastCommand = command;
-        return setTransmitters(transmitter)
-                && sendCommand("SEND_START " + remote + " " + command, false) != null;
+        return sendCommand("SEND_START " + remote + " " + command, toLircTransmitter(transmitter));
     }
 
     public boolean stopIr(String remote, String command, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
+        return sendCommand("SEND_STOP " + remote + " " + command, toLircTransmitter(transmitter));
+    }
+
+    /**
+     * Selects the transmitters, and sends the command, without commands of other threads in between.
+     */
+    private boolean sendCommand(String packet, LircTransmitter transmitter) throws IOException {
+        synchronized (transmitLock) {
             return setTransmitters(transmitter)
-                    && sendCommand("SEND_STOP " + remote + " " + command, false) != null;
+                    && sendCommand(packet, false) != null;
+        }
     }
 
     public boolean stopIr(String remote, String command, int port) throws IOException, NoSuchTransmitterException {
@@ -498,12 +620,10 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
      * @throws NoSuchTransmitterException
      */
     public boolean setTransmitters(Transmitter transmitter) throws NoSuchTransmitterException, IOException {
-        if (transmitter == null)
-            return true;
-        if (!LircTransmitter.class.isInstance(transmitter))
-            throw new NoSuchTransmitterException(transmitter);
-        lircTransmitter = (LircTransmitter) transmitter;
-        return setTransmitters();
+        LircTransmitter lircTransmitter = toLircTransmitter(transmitter);
+        synchronized (transmitLock) {
+            return setTransmitters(lircTransmitter);
+        }
     }
 
     public boolean setTransmitters(int port) throws NoSuchTransmitterException, IOException {
@@ -515,14 +635,23 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
         return setTransmitters(transmitter);
     }
 
-    private boolean setTransmitters() throws IOException {
-        if (lircTransmitter.isTrivial())
+    // Call only holding transmitLock.
+    private boolean setTransmitters(LircTransmitter lircTransmitter) throws IOException {
+        if (lircTransmitter == null || lircTransmitter.isTrivial())
             return true;
 
         String s = "SET_TRANSMITTERS " + lircTransmitter.toString();
         return sendCommand(s, false) != null;
     }
 
+    private static LircTransmitter toLircTransmitter(Transmitter transmitter) throws NoSuchTransmitterException {
+        if (transmitter == null)
+            return null;
+        if (!LircTransmitter.class.isInstance(transmitter))
+            throw new NoSuchTransmitterException(transmitter);
+        return (LircTransmitter) transmitter;
+    }
+
     @Override
     public String getVersion() throws IOException {
         return version;
@@ -537,6 +666,275 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
         return version != null;
     }
 
+    /**
+     * A connection to lircd, through TCP, or through a Unix domain socket.
+     * Reads wait indefinitely; sendCommand times out by itself.
+     */
+    private class Connection {
+        private final Closeable channel;
+        private final OutputStream outToServer;
+        private final BufferedReader inFromServer;
+
+        Connection() throws IOException {
+            if (socketPath != null) {
+                UnixDomainSocketChannel unixChannel = new UnixDomainSocketChannel(socketPath, verbose);
+                unixChannel.connect();
+                channel = unixChannel;
+                outToServer = unixChannel.getOut();
+                inFromServer = unixChannel.getBufferedIn();
+            } else {
+                TcpSocketChannel tcpChannel = new TcpSocketChannel(inetAddress, lircPort,
+                        timeout, verbose, TcpSocketPort.ConnectionMode.keepAlive);
+                tcpChannel.connect();
+                tcpChannel.setTimeout(0);
+                channel = tcpChannel;
+                outToServer = tcpChannel.getOut();
+                inFromServer = tcpChannel.getBufferedIn();
+            }
+            if (outToServer == null || inFromServer == null)
+                throw new IOException("Could not open socket connection to LIRC server " + getServerName());
+        }
+
+        private void send(String string) throws IOException {
+            outToServer.write(string.getBytes(StandardCharsets.US_ASCII));
+        }
+
+        private void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static class PendingCommand {
+        private final String packet;
+        private final boolean oneWord;
+        private final CompletableFuture<String[]> future;
+
+        PendingCommand(String packet, boolean oneWord) {
+            this.packet = packet;
+            this.oneWord = oneWord;
+            this.future = new CompletableFuture<>();
+        }
+    }
+
+    /**
+     * Reads the replies of lircd, BEGIN ... END blocks, and hands them to the waiting commands.
+     */
+    private class ReplyReaderThread extends Thread {
+        private final Connection channel;
+        private final BufferedReader inFromServer;
+
+        ReplyReaderThread(Connection channel) {
+            super("LircClient-" + getServerId());
+            this.channel = channel;
+            this.inFromServer = channel.inFromServer;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            IOException reason = new IOException("Connection to LIRC server " + getServerName() + " lost");
+            try {
+                while (true) {
+                    String line = readLine();
+                    if (line.equals("BEGIN"))
+                        readReply();
+                    else {
+                        Event event = Event.parse(line);
+                        if (event != null)
+                            offerEvent(event);
+                    }
+                }
+            } catch (IOException ex) {
+                logger.log(Level.FINE, "Reading from Lirc: {0}", ex.getMessage());
+            }
+            disconnect(channel, reason);
+        }
+
+        /**
+         * Reads the rest of a reply block, following BEGIN.
+         */
+        private void readReply() throws IOException {
+            String message = readLine();
+            if (message.equals("SIGHUP")) {
+                while (!readLine().equals("END")) {
+                }
+                return;
+            }
+            try {
+                boolean success;
+                String string = readLine();
+                switch (string) {
+                    case "SUCCESS":
+                        success = true;
+                        break;
+                    case "END":
+                        dispatch(message, new String[0]);
+                        return;
+                    case "ERROR":
+                        logger.log(Level.SEVERE, "command failed: {0}", message);
+                        success = false;
+                        break;
+                    default:
+                        throw new BadPacketException();
+                }
+                String[] data = new String[0];
+                string = readLine();
+                if (string.equals("DATA")) {
+                    int dataN = Integer.parseInt(readLine());
+                    data = new String[dataN];
+                    for (int n = 0; n < dataN; n++)
+                        data[n] = readLine();
+                    string = readLine();
+                }
+                if (!string.equals("END"))
+                    throw new BadPacketException();
+                dispatch(message, success ? data : null);
+            } catch (BadPacketException | NumberFormatException e) {
+                logger.severe("bad return packet");
+                dispatch(message, null);
+            }
+        }
+
+        @SuppressWarnings("UseOfSystemOutOrSystemErr")
+        private String readLine() throws IOException {
+            String string = inFromServer.readLine();
+            if (verbose)
+                System.err.println("Received `" + string + "'");
+            if (string == null)
+                throw new EOFException();
+            return string;
+        }
+    }
+
+    /**
+     * Delivers the received events to the listeners, and reconnects when the connection has dropped.
+     */
+    private class EventDispatcherThread extends Thread {
+
+        EventDispatcherThread() {
+            super("LircClient-events-" + getServerId());
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isInterrupted()) {
+                    Event event = events.poll(reconnectDelay, TimeUnit.MILLISECONDS);
+                    if (event != null)
+                        eventListeners.forEach((listener) -> {
+                            listener.event(event);
+                        });
+                    else if (!eventListeners.isEmpty())
+                        try {
+                            connection();
+                        } catch (IOException ex) {
+                            logger.log(Level.FINE, "Reconnecting to Lirc failed: {0}", ex.getMessage());
+                        }
+                }
+            } catch (InterruptedException ex) {
+            }
+        }
+    }
+
+    /**
+     * Receives the events of addEventListener.
+     */
+    public interface EventListener {
+        public void event(Event event);
+    }
+
+    /**
+     * A signal received by lircd, as broadcast in the form "code repeat button remote".
+     */
+    public static final class Event {
+
+        /**
+         * Parses a broadcast line, code and repeat count being hexadecimal.
+         * @param line
+         * @return Event, or null if the line is not of this form.
+         */
+        public static Event parse(String line) {
+            int length = line.length();
+            int pos = 0;
+            long code = 0L;
+            while (pos < length && line.charAt(pos) != ' ') {
+                int digit = Character.digit(line.charAt(pos), 16);
+                if (digit < 0)
+                    return null;
+                code = (code << 4) | digit;
+                pos++;
+            }
+            if (pos == 0 || pos == length)
+                return null;
+
+            int start = ++pos;
+            int repeat = 0;
+            while (pos < length && line.charAt(pos) != ' ') {
+                int digit = Character.digit(line.charAt(pos), 16);
+                if (digit < 0)
+                    return null;
+                repeat = (repeat << 4) | digit;
+                pos++;
+            }
+            if (pos == start || pos == length)
+                return null;
+
+            start = ++pos;
+            while (pos < length && line.charAt(pos) != ' ')
+                pos++;
+            if (pos == start || pos >= length - 1)
+                return null;
+
+            return new Event(code, repeat, line.substring(start, pos), line.substring(pos + 1).trim(), System.currentTimeMillis());
+        }
+
+        private final long code;
+        private final int repeat;
+        private final String button;
+        private final String remote;
+        private final long time;
+
+        private Event(long code, int repeat, String button, String remote, long time) {
+            this.code = code;
+            this.repeat = repeat;
+            this.button = button;
+            this.remote = remote;
+            this.time = time;
+        }
+
+        public long getCode() {
+            return code;
+        }
+
+        /**
+         * @return 0 for a new key press, otherwise the number of the repeat.
+         */
+        public int getRepeat() {
+            return repeat;
+        }
+
+        public String getButton() {
+            return button;
+        }
+
+        public String getRemote() {
+            return remote;
+        }
+
+        /**
+         * @return Time of reception, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x %02x %s %s", code, repeat, button, remote);
+        }
+    }
+
     private static class BadPacketException extends Exception {
         BadPacketException() {
             super();
@@ -549,7 +947,7 @@ public class LircClient implements IHarcHardware, IRemoteCommandIrSender, IIrSen
 
     private final static class CommandLineArgs {
 
-        @Parameter(names = {"-a", "--address"}, description = "IP name or address of lircd host")
+        @Parameter(names = {"-a", "--address"}, description = "IP name or address of lircd host, or path of its Unix domain socket")
         private String address = "localhost";
 
         @Parameter(names = {"-h", "--help", "-?"}, description = "Display help message")
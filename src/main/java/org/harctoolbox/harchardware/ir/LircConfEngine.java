@@ -0,0 +1,550 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.harctoolbox.harchardware.HarcHardwareException;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSignal;
+
+/**
+ * Sends the named commands of lircd.conf files through any IRawIrSender, without lircd.
+ * Remotes with raw codes, and remotes with space encoded (e.g. NEC) or bi-phase (RC5) codes are supported;
+ * every command is rendered to an IrSignal once, when loading.
+ * Remotes using other encodings (RC6, RCMM, XMP, ...) are skipped with a warning.
+ */
+public class LircConfEngine implements IRemoteCommandIrSender, IIrSenderStop {
+
+    private static final Logger logger = Logger.getLogger(LircConfEngine.class.getName());
+
+    public static final int DEFAULT_FREQUENCY = 38000;
+
+    /** Number of sends per call to the sender when emulating sendIrCommandRepeat. */
+    private static final int REPEAT_CHUNK = 10;
+
+    /**
+     * Parses a lircd.conf file.
+     * @param reader
+     * @return Map from remote name to a map from command name to IrSignal, in file order.
+     * @throws IOException
+     * @throws InvalidArgumentException on syntax errors.
+     */
+    public static Map<String, Map<String, IrSignal>> parse(Reader reader) throws IOException, InvalidArgumentException {
+        return new Parser(reader).parse();
+    }
+
+    public static Map<String, Map<String, IrSignal>> parse(File file) throws IOException, InvalidArgumentException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return parse(reader);
+        }
+    }
+
+    private final IRawIrSender sender;
+    private final Map<String, Map<String, IrSignal>> remotes = new LinkedHashMap<>(8);
+    private volatile boolean stopRequested = false;
+
+    public LircConfEngine(IRawIrSender sender) {
+        this.sender = sender;
+    }
+
+    /**
+     * Adds the remotes of a lircd.conf file, replacing remotes with the same names.
+     * @param file
+     * @throws IOException
+     * @throws InvalidArgumentException
+     */
+    public synchronized void load(File file) throws IOException, InvalidArgumentException {
+        remotes.putAll(parse(file));
+    }
+
+    public synchronized void load(Reader reader) throws IOException, InvalidArgumentException {
+        remotes.putAll(parse(reader));
+    }
+
+    @Override
+    public synchronized String[] getRemotes() {
+        return remotes.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @param remote
+     * @return command names, or null if there is no such remote.
+     */
+    @Override
+    public synchronized String[] getCommands(String remote) {
+        Map<String, IrSignal> commands = remotes.get(remote);
+        return commands != null ? commands.keySet().toArray(new String[0]) : null;
+    }
+
+    /**
+     * @param remote
+     * @param command
+     * @return the rendered signal, or null if not found.
+     */
+    public synchronized IrSignal getIrSignal(String remote, String command) {
+        Map<String, IrSignal> commands = remotes.get(remote);
+        return commands != null ? commands.get(command) : null;
+    }
+
+    @Override
+    public boolean sendIrCommand(String remote, String command, int count, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
+        IrSignal irSignal = getIrSignal(remote, command);
+        if (irSignal == null) {
+            logger.log(Level.WARNING, "No command {1} in remote {0}", new Object[]{remote, command});
+            return false;
+        }
+        try {
+            return sender.sendIr(irSignal, count, transmitter);
+        } catch (HarcHardwareException | InvalidArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Sends the command until stopIr. If the sender does not implement IRawIrSenderRepeat,
+     * this is emulated by sending it REPEAT_CHUNK times at a time, at most repeatMax times,
+     * checking for stopIr between the chunks.
+     */
+    @Override
+    public boolean sendIrCommandRepeat(String remote, String command, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
+        IrSignal irSignal = getIrSignal(remote, command);
+        if (irSignal == null) {
+            logger.log(Level.WARNING, "No command {1} in remote {0}", new Object[]{remote, command});
+            return false;
+        }
+        if (sender instanceof IRawIrSenderRepeat)
+            return ((IRawIrSenderRepeat) sender).sendIrRepeat(irSignal, transmitter);
+
+        stopRequested = false;
+        try {
+            for (int sent = 0; sent < repeatMax && !stopRequested; sent += REPEAT_CHUNK)
+                if (!sender.sendIr(irSignal, Math.min(REPEAT_CHUNK, repeatMax - sent), transmitter))
+                    return false;
+            return true;
+        } catch (HarcHardwareException | InvalidArgumentException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Stops a sendIrCommandRepeat, after the current chunk if it is emulated.
+     * @param transmitter
+     * @return false if the sender repeats by itself, but does not implement IIrSenderStop.
+     * @throws NoSuchTransmitterException
+     * @throws IOException
+     */
+    @Override
+    public boolean stopIr(Transmitter transmitter) throws NoSuchTransmitterException, IOException {
+        stopRequested = true;
+        return sender instanceof IIrSenderStop ? ((IIrSenderStop) sender).stopIr(transmitter) : !(sender instanceof IRawIrSenderRepeat);
+    }
+
+    @Override
+    public Transmitter getTransmitter() {
+        return sender.getTransmitter();
+    }
+
+    private static class Parser {
+        private final BufferedReader reader;
+        private int lineNumber = 0;
+        private final Map<String, Map<String, IrSignal>> result = new LinkedHashMap<>(8);
+
+        Parser(Reader reader) {
+            this.reader = new BufferedReader(reader);
+        }
+
+        Map<String, Map<String, IrSignal>> parse() throws IOException, InvalidArgumentException {
+            String[] words;
+            while ((words = nextLine()) != null)
+                if (words.length == 2 && words[0].equals("begin") && words[1].equals("remote"))
+                    parseRemote();
+                else
+                    throw error("Expected \"begin remote\"");
+            return result;
+        }
+
+        private void parseRemote() throws IOException, InvalidArgumentException {
+            Remote remote = new Remote();
+            Map<String, IrSignal> commands = new LinkedHashMap<>(32);
+            String[] words;
+            while ((words = nextLine()) != null) {
+                if (words[0].equals("end")) {
+                    if (remote.name == null)
+                        throw error("Remote without name");
+                    if (remote.supported())
+                        result.put(remote.name, commands);
+                    else
+                        logger.log(Level.WARNING, "Remote {0}: flags {1} not supported, skipped", new Object[]{remote.name, remote.flags});
+                    return;
+                }
+                if (words[0].equals("begin") && words.length == 2) {
+                    switch (words[1]) {
+                        case "codes":
+                            parseCodes(remote, commands);
+                            break;
+                        case "raw_codes":
+                            parseRawCodes(remote, commands);
+                            break;
+                        default:
+                            skipSection(words[1]);
+                            break;
+                    }
+                } else
+                    remote.set(words, this);
+            }
+            throw error("Unexpected end of file");
+        }
+
+        private void parseCodes(Remote remote, Map<String, IrSignal> commands) throws IOException, InvalidArgumentException {
+            String[] words;
+            while ((words = nextLine()) != null) {
+                if (words[0].equals("end"))
+                    return;
+                if (words.length < 2)
+                    throw error("Missing code");
+                if (remote.supported())
+                    commands.put(words[0], remote.render(number(words[1])));
+            }
+            throw error("Unexpected end of file");
+        }
+
+        private void parseRawCodes(Remote remote, Map<String, IrSignal> commands) throws IOException, InvalidArgumentException {
+            String name = null;
+            List<Integer> durations = new ArrayList<>(128);
+            String[] words;
+            while ((words = nextLine()) != null) {
+                if (words[0].equals("end") || words[0].equals("name")) {
+                    if (name != null)
+                        commands.put(name, remote.renderRaw(durations));
+                    if (words[0].equals("end"))
+                        return;
+                    if (words.length < 2)
+                        throw error("Missing name");
+                    name = words[1];
+                    durations.clear();
+                } else {
+                    if (name == null)
+                        throw error("Durations without name");
+                    for (String word : words)
+                        durations.add((int) number(word));
+                }
+            }
+            throw error("Unexpected end of file");
+        }
+
+        private void skipSection(String section) throws IOException, InvalidArgumentException {
+            String[] words;
+            while ((words = nextLine()) != null)
+                if (words[0].equals("end") && words.length == 2 && words[1].equals(section))
+                    return;
+            throw error("Unexpected end of file");
+        }
+
+        /**
+         * @return the words of the next non-empty line, comments removed, or null at end of file.
+         */
+        private String[] nextLine() throws IOException {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                int hash = line.indexOf('#');
+                if (hash >= 0)
+                    line = line.substring(0, hash);
+                line = line.trim();
+                if (!line.isEmpty())
+                    return line.split("\\s+");
+            }
+            return null;
+        }
+
+        private long number(String string) throws InvalidArgumentException {
+            try {
+                return string.startsWith("0x") || string.startsWith("0X")
+                        ? Long.parseUnsignedLong(string.substring(2), 16)
+                        : Long.parseLong(string);
+            } catch (NumberFormatException ex) {
+                throw error("Invalid number \"" + string + "\"");
+            }
+        }
+
+        private InvalidArgumentException error(String message) {
+            return new InvalidArgumentException("lircd.conf line " + lineNumber + ": " + message);
+        }
+    }
+
+    /**
+     * The parameters of a remote, and the rendering of its codes.
+     */
+    private static class Remote {
+        private static final Set<String> supportedFlags = new HashSet<>(Arrays.asList(
+                "SPACE_ENC", "SHIFT_ENC", "RC5", "RAW_CODES", "CONST_LENGTH", "REVERSE", "NO_HEAD_REP", "NO_FOOT_REP", "REPEAT_HEADER"));
+
+        private String name = null;
+        private String flags = "";
+        private boolean supported = true;
+        private boolean biphase = false;
+        private boolean constLength = false;
+        private boolean reverse = false;
+        private boolean noHeadRep = false;
+        private boolean noFootRep = false;
+        private boolean repeatHeader = false;
+        private int bits = 0;
+        private int frequency = DEFAULT_FREQUENCY;
+        private int[] header = new int[2];
+        private int[] one = new int[2];
+        private int[] zero = new int[2];
+        private int[] pre = new int[2];
+        private int[] post = new int[2];
+        private int[] foot = new int[2];
+        private int[] repeat = new int[2];
+        private int plead = 0;
+        private int ptrail = 0;
+        private int preDataBits = 0;
+        private long preData = 0L;
+        private int postDataBits = 0;
+        private long postData = 0L;
+        private int gap = 0;
+        private int repeatGap = 0;
+
+        private void set(String[] words, Parser parser) throws InvalidArgumentException {
+            if (words.length < 2)
+                return; // e.g. a name-less option; ignore
+            switch (words[0]) {
+                case "name":
+                    name = words[1];
+                    break;
+                case "flags":
+                    flags = words[1];
+                    for (String flag : flags.split("\\|")) {
+                        supported &= supportedFlags.contains(flag);
+                        biphase |= flag.equals("SHIFT_ENC") || flag.equals("RC5");
+                        constLength |= flag.equals("CONST_LENGTH");
+                        reverse |= flag.equals("REVERSE");
+                        noHeadRep |= flag.equals("NO_HEAD_REP");
+                        noFootRep |= flag.equals("NO_FOOT_REP");
+                        repeatHeader |= flag.equals("REPEAT_HEADER");
+                    }
+                    break;
+                case "bits":
+                    bits = (int) parser.number(words[1]);
+                    break;
+                case "frequency":
+                    frequency = (int) parser.number(words[1]);
+                    break;
+                case "header":
+                    header = pair(words, parser);
+                    break;
+                case "one":
+                    one = pair(words, parser);
+                    break;
+                case "zero":
+                    zero = pair(words, parser);
+                    break;
+                case "pre":
+                    pre = pair(words, parser);
+                    break;
+                case "post":
+                    post = pair(words, parser);
+                    break;
+                case "foot":
+                    foot = pair(words, parser);
+                    break;
+                case "repeat":
+                    repeat = pair(words, parser);
+                    break;
+                case "plead":
+                    plead = (int) parser.number(words[1]);
+                    break;
+                case "ptrail":
+                    ptrail = (int) parser.number(words[1]);
+                    break;
+                case "pre_data_bits":
+                    preDataBits = (int) parser.number(words[1]);
+                    break;
+                case "pre_data":
+                    preData = parser.number(words[1]);
+                    break;
+                case "post_data_bits":
+                    postDataBits = (int) parser.number(words[1]);
+                    break;
+                case "post_data":
+                    postData = parser.number(words[1]);
+                    break;
+                case "gap":
+                    gap = (int) parser.number(words[1]);
+                    break;
+                case "repeat_gap":
+                    repeatGap = (int) parser.number(words[1]);
+                    break;
+                default:
+                    break; // eps, aeps, toggle_bit_mask, min_repeat, duty_cycle, ...: not needed for sending
+            }
+        }
+
+        private static int[] pair(String[] words, Parser parser) throws InvalidArgumentException {
+            if (words.length < 3)
+                throw parser.error("Expected two numbers after " + words[0]);
+            return new int[]{(int) parser.number(words[1]), (int) parser.number(words[2])};
+        }
+
+        private boolean supported() {
+            return supported;
+        }
+
+        private IrSignal render(long code) throws InvalidArgumentException {
+            Durations durations = new Durations();
+            frame(durations, code, true, true);
+            int introLength = durations.size();
+            if (repeat[0] == 0 && repeat[1] == 0) {
+                if (!noHeadRep && !noFootRep)
+                    // The whole signal is resent
+                    return durations.toIrSignal(0, introLength, frequency);
+                frame(durations, code, !noHeadRep, !noFootRep);
+            } else {
+                long start = durations.total;
+                if (repeatHeader) {
+                    durations.pulse(header[0]);
+                    durations.space(header[1]);
+                }
+                durations.pulse(plead);
+                durations.pulse(repeat[0]);
+                durations.space(repeat[1]);
+                durations.pulse(ptrail);
+                int repeatSpace = repeatGap > 0 ? repeatGap : gap;
+                durations.space(constLength ? (int) Math.max(repeatSpace - (durations.total - start), 0) : repeatSpace);
+            }
+            return durations.toIrSignal(introLength, durations.size() - introLength, frequency);
+        }
+
+        private void frame(Durations durations, long code, boolean withHeader, boolean withFoot) throws InvalidArgumentException {
+            long start = durations.total;
+            if (withHeader) {
+                durations.pulse(header[0]);
+                durations.space(header[1]);
+            }
+            durations.pulse(plead);
+            if (preDataBits > 0) {
+                bits(durations, preData, preDataBits);
+                durations.pulse(pre[0]);
+                durations.space(pre[1]);
+            }
+            bits(durations, code, bits);
+            if (postDataBits > 0) {
+                durations.pulse(post[0]);
+                durations.space(post[1]);
+                bits(durations, postData, postDataBits);
+            }
+            durations.pulse(ptrail);
+            if (withFoot) {
+                durations.space(foot[1]);
+                durations.pulse(foot[0]);
+            }
+            durations.space(constLength ? (int) Math.max(gap - (durations.total - start), 0) : gap);
+            if (durations.size() % 2 != 0)
+                throw new InvalidArgumentException("Remote " + name + ": signal does not end with a gap");
+        }
+
+        private void bits(Durations durations, long data, int noBits) {
+            for (int i = 0; i < noBits; i++) {
+                int shift = reverse ? i : noBits - 1 - i;
+                boolean bit = ((data >>> shift) & 1L) != 0L;
+                if (biphase) {
+                    if (bit) {
+                        durations.space(one[1]);
+                        durations.pulse(one[0]);
+                    } else {
+                        durations.pulse(zero[0]);
+                        durations.space(zero[1]);
+                    }
+                } else {
+                    int[] pair = bit ? one : zero;
+                    durations.pulse(pair[0]);
+                    durations.space(pair[1]);
+                }
+            }
+        }
+
+        private IrSignal renderRaw(List<Integer> raw) throws InvalidArgumentException {
+            Durations durations = new Durations();
+            for (int i = 0; i < raw.size(); i++)
+                if (i % 2 == 0)
+                    durations.pulse(raw.get(i));
+                else
+                    durations.space(raw.get(i));
+            durations.space(gap); // merged into the last space, if any
+            if (durations.size() % 2 != 0)
+                throw new InvalidArgumentException("Remote " + name + ": raw signal does not end with a gap");
+            return durations.toIrSignal(0, durations.size(), frequency);
+        }
+    }
+
+    /**
+     * Collects alternating pulses and spaces, merging consecutive ones of the same kind,
+     * and skipping zero durations and leading spaces.
+     */
+    private static class Durations {
+        private int[] data = new int[128];
+        private int size = 0;
+        private long total = 0L;
+
+        private void pulse(int duration) {
+            add(duration, true);
+        }
+
+        private void space(int duration) {
+            add(duration, false);
+        }
+
+        private void add(int duration, boolean isPulse) {
+            if (duration <= 0 || (size == 0 && !isPulse))
+                return;
+            total += duration;
+            boolean lastIsPulse = size % 2 == 1;
+            if (size > 0 && lastIsPulse == isPulse)
+                data[size - 1] += duration;
+            else {
+                if (size == data.length)
+                    data = Arrays.copyOf(data, 2 * size);
+                data[size++] = duration;
+            }
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private IrSignal toIrSignal(int introLength, int repeatLength, int frequency) throws InvalidArgumentException {
+            return new IrSignal(Arrays.copyOf(data, size), introLength, repeatLength, frequency);
+        }
+    }
+}
@@ -23,6 +23,9 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.text.ParseException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.harctoolbox.harchardware.HarcHardwareException;
@@ -30,16 +33,47 @@ import org.harctoolbox.harchardware.IHarcHardware;
 import org.harctoolbox.ircore.IrCoreUtils;
 import org.harctoolbox.ircore.IrSequence;
 import org.harctoolbox.ircore.ModulatedIrSequence;
+import org.harctoolbox.ircore.OddSequenceLengthException;
 
 /**
  * This class runs an external program, for example mode2 of LIRC, in a separate process,
  * and evaluates its output, which is assumed to be in the LIRC mode2 format.
+ * The input is read by a thread of its own, which assembles the durations to IrSequences
+ * and puts them in a queue, so that receive can honor the begin timeout even on a silent input.
+ * When the queue is full, the reader waits for receive to catch up, so that no signal is lost.
+ * A signal ends on a space at least as long as the ending timeout, on a timeout report,
+ * when no input has been seen for the ending timeout, or when it reaches the capture max size.
+ * Since a blocking read cannot in general be interrupted, close returns at once,
+ * and the input is closed by the reader thread as soon as its read returns.
  */
 public final class LircMode2 implements IHarcHardware, ICapture, IReceive  {
+
+    private static final Logger logger = Logger.getLogger(LircMode2.class.getName());
+
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+
+    // Put in the queue to wake up receive.
+    private static final IrSequence WAKEUP = new IrSequence();
+
     private final Mode2Parser parser;
+    private final BlockingQueue<IrSequence> sequences = new ArrayBlockingQueue<>(DEFAULT_QUEUE_SIZE);
+    private int[] durations; // signal being assembled, guarded by sequences
+    private int length = 0; // guarded by sequences
+    private boolean discarding = false; // guarded by sequences
+    private long lastInput = 0L; // guarded by sequences
+    private int beginTimeout = DEFAULT_BEGIN_TIMEOUT;
+    private volatile int endingTimeout;
+    private int captureMaxSize = DEFAULT_CAPTURE_MAXSIZE;
+    private Mode2ReaderThread readerThread = null;
+    private volatile boolean endOfInput = false;
+    private volatile IOException readError = null;
+    private volatile boolean stopRequested = false;
+    private volatile boolean closed = false;
 
     public LircMode2(Reader reader, boolean verbose, int endingTimeout) {
         parser = new Mode2Parser(reader, (int) IrCoreUtils.milliseconds2microseconds(endingTimeout));
+        this.endingTimeout = endingTimeout;
+        durations = new int[captureMaxSize + 1];
     }
 
     public LircMode2(InputStream inputStream, boolean verbose, int endingTimeout) {
@@ -65,17 +99,27 @@ public final class LircMode2 implements IHarcHardware, ICapture, IReceive  {
 
     @Override
     public boolean isValid() {
-        return parser.isValid();
+        return !closed && (parser.isValid() || !sequences.isEmpty());
     }
 
     @Override
-    public void close() throws IOException {
-        parser.close();
+    public synchronized void close() throws IOException {
+        closed = true;
+        wakeUp();
+        if (readerThread == null || !readerThread.isAlive())
+            parser.close();
+        else
+            readerThread.interrupt(); // closes the parser when its read returns
     }
 
-
     @Override
-    public void open() throws IOException {
+    public synchronized void open() throws IOException {
+        if (closed)
+            throw new IOException("LircMode2 has been closed");
+        if (readerThread == null) {
+            readerThread = new Mode2ReaderThread();
+            readerThread.start();
+        }
     }
 
     @Override
@@ -88,51 +132,189 @@ public final class LircMode2 implements IHarcHardware, ICapture, IReceive  {
 
     @Override
     public boolean stopCapture() {
-        try {
-            close();
-        } catch (IOException ex) {
-            return false;
-        }
-        return true;
+        return stopReceive();
     }
 
     @Override
     public void setEndingTimeout(int timeout) {
+        endingTimeout = timeout;
         parser.setThreshold((int)IrCoreUtils.milliseconds2microseconds(timeout));
     }
 
+    /**
+     * Returns the next signal from the input. Waits at most the begin timeout for a signal to start;
+     * a signal that has started is waited for until it ends.
+     * @return IrSequence, or null on begin timeout, end of input, or stopReceive.
+     * @throws IOException if reading the input failed.
+     * @throws HarcHardwareException
+     */
     @Override
     public IrSequence receive() throws IOException, HarcHardwareException {
+        open();
+        stopRequested = false;
+        long beginDeadline = System.currentTimeMillis() + beginTimeout;
         try {
-            return parser.readIrSequence();
-        } catch (ParseException ex) {
-            throw new HarcHardwareException(ex);
+            while (!stopRequested && !closed) {
+                long now = System.currentTimeMillis();
+                int slice = (int) Math.max(1L, Math.min(endingTimeout, beginDeadline - now));
+                IrSequence irSequence = sequences.poll(slice, TimeUnit.MILLISECONDS);
+                if (irSequence == WAKEUP)
+                    continue;
+                if (irSequence != null)
+                    return irSequence;
+
+                synchronized (sequences) {
+                    now = System.currentTimeMillis();
+                    if (length > 0 && now - lastInput >= endingTimeout)
+                        // no trailing space written (yet), the signal has ended anyhow.
+                        // The reader is waiting for input, so it has no signal left to put in the queue before this one.
+                        return finish();
+                    if (length == 0) {
+                        if (readError != null)
+                            throw readError;
+                        if (endOfInput && sequences.isEmpty())
+                            return null;
+                        if (now >= beginDeadline)
+                            return null;
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException(ex);
         }
+        return null;
     }
 
-    @Override
-    public boolean stopReceive() {
+    // Call only holding the lock of sequences. Returns the signal ended by the duration, if any.
+    private IrSequence add(int duration) {
+        lastInput = System.currentTimeMillis();
+        boolean pulse = duration > 0;
+        int value = Math.abs(duration);
+        boolean ending = !pulse && value >= IrCoreUtils.milliseconds2microseconds(endingTimeout);
+        if (discarding) {
+            // rest of a signal that was cut at captureMaxSize
+            discarding = !ending;
+            return null;
+        }
+        if (length == 0 && !pulse)
+            return null;
+
+        if (length % 2 == (pulse ? 1 : 0))
+            durations[length - 1] += value;
+        else
+            durations[length++] = value;
+
+        if (ending)
+            return finish();
+        else if (length >= captureMaxSize) {
+            discarding = true;
+            return finish();
+        }
+        return null;
+    }
+
+    // Call only holding the lock of sequences. Returns the signal assembled so far, or null if none.
+    private IrSequence finish() {
+        if (length == 0)
+            return null;
+        if (length % 2 != 0)
+            durations[length++] = Mode2Parser.DUMMYGAP;
+        int[] data = new int[length];
+        System.arraycopy(durations, 0, data, 0, length);
+        length = 0;
         try {
-            close();
-            return true;
-        } catch (IOException ex) {
-            Logger.getLogger(LircMode2.class.getName()).log(Level.SEVERE, null, ex);
-            return false;
+            return new IrSequence(data);
+        } catch (OddSequenceLengthException ex) {
+            assert false;
+            return null;
         }
     }
 
+    /**
+     * Makes a receive in progress return null. The input is not closed.
+     * @return true
+     */
+    @Override
+    public boolean stopReceive() {
+        stopRequested = true;
+        wakeUp();
+        return true;
+    }
+
+    private void wakeUp() {
+        sequences.offer(WAKEUP); // if full, receive is not waiting anyhow
+    }
+
     @Override
     public void setTimeout(int timeout) throws IOException {
         setEndingTimeout(timeout);
     }
 
     @Override
-    public void setBeginTimeout(int integer) throws IOException {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setBeginTimeout(int beginTimeout) {
+        this.beginTimeout = beginTimeout;
     }
 
     @Override
-    public void setCaptureMaxSize(int integer) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    public void setCaptureMaxSize(int captureMaxSize) {
+        if (captureMaxSize < 2)
+            throw new IllegalArgumentException("captureMaxSize must be at least 2");
+        synchronized (sequences) {
+            this.captureMaxSize = captureMaxSize;
+            if (durations.length < captureMaxSize + 1) {
+                int[] newDurations = new int[captureMaxSize + 1];
+                System.arraycopy(durations, 0, newDurations, 0, length);
+                durations = newDurations;
+            }
+        }
+    }
+
+    private class Mode2ReaderThread extends Thread {
+
+        Mode2ReaderThread() {
+            super("LircMode2-reader");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!closed) {
+                    int duration;
+                    try {
+                        duration = parser.readDuration();
+                    } catch (ParseException ex) {
+                        logger.log(Level.WARNING, "Unparsable mode2 input: {0}", ex.getMessage());
+                        continue;
+                    }
+                    IrSequence irSequence;
+                    synchronized (sequences) {
+                        irSequence = duration == 0 ? finish() : add(duration);
+                    }
+                    if (irSequence != null)
+                        sequences.put(irSequence); // waits while receive is behind; interrupted by close
+                    if (duration == 0)
+                        break;
+                }
+            } catch (IOException ex) {
+                if (!closed)
+                    readError = ex;
+            } catch (InterruptedException ex) {
+                // closed
+            } finally {
+                endOfInput = true;
+                if (closed)
+                    closeParser();
+            }
+        }
+
+        private void closeParser() {
+            try {
+                parser.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Closing mode2 input failed: {0}", ex.getMessage());
+            }
+        }
     }
 }
@@ -23,11 +23,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.io.Reader;
 import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,6 +36,8 @@ import org.harctoolbox.ircore.OddSequenceLengthException;
 
 /**
  * This class contains a parser for mode2 files.
+ * The input is scanned directly from a character buffer, without creating Strings or boxed Integers
+ * for the lines, so that also very long recordings can be read quickly.
  */
 
 public class Mode2Parser {
@@ -46,6 +48,14 @@ public class Mode2Parser {
     public static final int DUMMYGAP = 50000;
     public static final int DEFAULT_THRESHOLD = 100000; // 100ms
 
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final String PULSE_KEYWORD = "pulse";
+    private static final String SPACE_KEYWORD = "space";
+    private static final String TIMEOUT_KEYWORD = "timeout";
+    // Quirk in mode2, see https://sourceforge.net/p/lirc/tickets/272/
+    private static final String USING_KEYWORD = "Using";
+
     @SuppressWarnings("UseOfSystemOutOrSystemErr")
     public static void main(String[] args) {
         try {
@@ -62,12 +72,19 @@ public class Mode2Parser {
         }
     }
 
-    private final LineNumberReader reader;
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private int lineNumber = 1;
+    private boolean previousCR = false;
+    private final StringBuilder token = new StringBuilder(16);
+    private int[] durations = new int[INITIAL_CAPACITY];
     private int threshold;
     private boolean valid;
 
     public Mode2Parser(Reader reader, int threshold) {
-        this.reader = new LineNumberReader(reader);
+        this.reader = reader;
         this.threshold = threshold;
         this.valid = true;
     }
@@ -84,12 +101,15 @@ public class Mode2Parser {
         return valid;
     }
 
+    /**
+     * Closes the input. Not synchronized with reading, so that it is possible
+     * to close while another thread is reading, as far as the Reader allows.
+     * @throws IOException
+     */
     public void close() throws IOException {
         if (reader != null) {
-            synchronized (reader) {
-                reader.close();
-            }
             valid = false;
+            reader.close();
         }
     }
 
@@ -109,67 +129,175 @@ public class Mode2Parser {
         return result;
     }
 
-    public IrSequence readIrSequence() throws ParseException, IOException {
+    /**
+     * Reads the next duration from the input, skipping empty lines and comments.
+     * A timeout line, as written by mode2 for drivers supporting timeout reports, is returned as a space.
+     * Durations of zero are ignored.
+     * @return duration in microseconds, positive for pulses, negative for spaces; 0 at end of file.
+     * @throws ParseException
+     * @throws IOException
+     */
+    public int readDuration() throws ParseException, IOException {
         if (!valid)
-            return null;
+            return 0;
 
-        List<Integer> list = new ArrayList<>(1024);
-        String line;
-        loop:
         while (true) {
-            synchronized (reader) {
-                line = reader.readLine();
-            }
-            if (line == null) {
+            int ch = skipWhitespace(true);
+            if (ch < 0) {
                 valid = false;
-                break;
+                return 0;
             }
-            line = line.trim();
-            if (line.isEmpty() || line.startsWith("#"))
+            if (ch == '#') {
+                skipLine();
                 continue;
+            }
 
-            // Quirk in mode2, see https://sourceforge.net/p/lirc/tickets/272/
-            if (line.startsWith("Using "))
+            readToken();
+            boolean pulse;
+            if (PULSE_KEYWORD.contentEquals(token))
+                pulse = true;
+            else if (SPACE_KEYWORD.contentEquals(token) || TIMEOUT_KEYWORD.contentEquals(token))
+                pulse = false;
+            else if (USING_KEYWORD.contentEquals(token)) {
+                skipLine();
                 continue;
+            } else {
+                ParseException ex = new ParseException("Unknown keyword: " + token, lineNumber);
+                skipLine();
+                throw ex;
+            }
 
-            String[] parts = line.split("\\s+");
-            try {
-                int value;
-                switch (parts[0]) {
-                    case "space":
-                        if (list.isEmpty())
-                            continue;
-
-                        value = Integer.parseInt(parts[1]);
-                        if (list.size() % 2 != 0)
-                            list.add(value);
-                        else
-                            list.set(list.size() - 1, list.get(list.size() - 1) + value);
-                        if (value >= threshold)
-                            break loop;
-                        break;
-                    case "pulse":
-                        value = Integer.parseInt(parts[1]);
-                        if (list.size() % 2 == 0)
-                            list.add(value);
-                        else
-                            list.set(list.size() - 1, list.get(list.size() - 1) + value);
-                        break;
-                    default:
-                        throw new ParseException("Unknown keyword: " + parts[0], reader.getLineNumber());
-                }
-            } catch (NumberFormatException ex) {
-                throw new ParseException(ex.getMessage(), reader.getLineNumber());
+            ch = skipWhitespace(false);
+            if (ch < 0 || ch == '\n' || ch == '\r')
+                throw new ParseException("Duration missing", lineNumber);
+            readToken();
+            int value = parseToken();
+            if (value < 0) {
+                ParseException ex = new ParseException("For input string: \"" + token + "\"", lineNumber);
+                skipLine();
+                throw ex;
+            }
+            skipLine();
+            if (value != 0)
+                return pulse ? value : -value;
+        }
+    }
+
+    /**
+     * Parses the token as a non-negative decimal integer, without creating a String.
+     * @return value, or -1 if not a valid number.
+     */
+    private int parseToken() {
+        int start = token.length() > 1 && token.charAt(0) == '+' ? 1 : 0;
+        int value = 0;
+        for (int i = start; i < token.length(); i++) {
+            int digit = token.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10)
+                return -1;
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        if (n <= 0)
+            return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    /**
+     * @return next character, without consuming it, or -1 at end of file.
+     */
+    private int peek() throws IOException {
+        return position < limit || fill() ? buffer[position] : -1;
+    }
+
+    private void consume() {
+        char ch = buffer[position++];
+        if (ch == '\n') {
+            if (!previousCR)
+                lineNumber++;
+            previousCR = false;
+        } else if (ch == '\r') {
+            lineNumber++;
+            previousCR = true;
+        } else
+            previousCR = false;
+    }
+
+    private int skipWhitespace(boolean newlines) throws IOException {
+        while (true) {
+            int ch = peek();
+            if (ch < 0 || !Character.isWhitespace(ch) || (!newlines && (ch == '\n' || ch == '\r')))
+                return ch;
+            consume();
+        }
+    }
+
+    private void readToken() throws IOException {
+        token.setLength(0);
+        while (true) {
+            int ch = peek();
+            if (ch < 0 || Character.isWhitespace(ch))
+                return;
+            token.append((char) ch);
+            consume();
+        }
+    }
+
+    private void skipLine() throws IOException {
+        while (true) {
+            int ch = peek();
+            if (ch < 0)
+                return;
+            consume();
+            if (ch == '\n' || ch == '\r')
+                return;
+        }
+    }
+
+    private void append(int length, int value) {
+        if (length == durations.length)
+            durations = Arrays.copyOf(durations, 2 * durations.length);
+        durations[length] = value;
+    }
+
+    public IrSequence readIrSequence() throws ParseException, IOException {
+        if (!valid)
+            return null;
+
+        int length = 0;
+        while (true) {
+            int duration = readDuration();
+            if (duration == 0)
+                break;
+
+            if (duration < 0) {
+                if (length == 0)
+                    continue;
+
+                int value = -duration;
+                if (length % 2 != 0)
+                    append(length++, value);
+                else
+                    durations[length - 1] += value;
+                if (value >= threshold)
+                    break;
+            } else {
+                if (length % 2 == 0)
+                    append(length++, duration);
+                else
+                    durations[length - 1] += duration;
             }
         }
-        if (list.size() % 2 != 0)
-            list.add(DUMMYGAP);
+        if (length % 2 != 0)
+            append(length++, DUMMYGAP);
 
-        double[] data = new double[list.size()];
-        for (int i = 0; i < data.length; i++)
-            data[i] = list.get(i);
         try {
-            return new IrSequence(data);
+            return new IrSequence(Arrays.copyOf(durations, length));
         } catch (OddSequenceLengthException ex) {
             assert false;
             return null;
@@ -0,0 +1,236 @@
+/*
+Copyright (C) 2026 Bengt Martensson.
+
+This program is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation; either version 3 of the License, or (at
+your option) any later version.
+
+This program is distributed in the hope that it will be useful, but
+WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+General Public License for more details.
+
+You should have received a copy of the GNU General Public License along with
+this program. If not, see http://www.gnu.org/licenses/.
+*/
+
+package org.harctoolbox.harchardware.ir;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * Caches the remotes and commands of an IRemoteCommandIrSender.
+ * The catalog is read completely from the device into an immutable, indexed snapshot,
+ * which answers getRemotes, getCommands, lookups, and prefix searches in memory.
+ * The snapshot is reloaded when older than maxAge, or on refresh(), and can be saved to,
+ * and loaded from, a file. Sending is delegated to the device.
+ */
+public class RemoteCommandCatalog implements IRemoteCommandIrSender {
+
+    private static final char separator = '\t';
+
+    private final IRemoteCommandIrSender sender;
+    private final long maxAge;
+    private volatile Snapshot snapshot = null;
+
+    /**
+     * @param sender device to cache
+     * @param maxAge time in milliseconds a snapshot is used; if &lt;= 0, until refresh() is called.
+     */
+    public RemoteCommandCatalog(IRemoteCommandIrSender sender, long maxAge) {
+        this.sender = sender;
+        this.maxAge = maxAge;
+    }
+
+    public RemoteCommandCatalog(IRemoteCommandIrSender sender) {
+        this(sender, 0L);
+    }
+
+    /**
+     * Reads the catalog from the device, replacing the snapshot.
+     * On failure, the previous snapshot is kept.
+     * @throws IOException
+     */
+    public synchronized void refresh() throws IOException {
+        String[] remotes = sender.getRemotes();
+        if (remotes == null)
+            throw new IOException("Could not read remotes");
+        Map<String, String[]> map = new LinkedHashMap<>(remotes.length);
+        for (String remote : remotes) {
+            String[] commands = sender.getCommands(remote);
+            if (commands == null)
+                throw new IOException("Could not read commands of " + remote);
+            map.put(remote, commands);
+        }
+        snapshot = new Snapshot(map, System.currentTimeMillis());
+    }
+
+    /**
+     * Discards the snapshot; the next query reads the catalog from the device.
+     */
+    public void invalidate() {
+        snapshot = null;
+    }
+
+    @Override
+    public String[] getRemotes() throws IOException {
+        return snapshot().remotes.clone();
+    }
+
+    /**
+     * @param remote
+     * @return Commands of the remote, or null if there is no such remote.
+     * @throws IOException
+     */
+    @Override
+    public String[] getCommands(String remote) throws IOException {
+        String[] commands = snapshot().commands.get(remote);
+        return commands != null ? commands.clone() : null;
+    }
+
+    public boolean hasRemote(String remote) throws IOException {
+        return snapshot().commands.containsKey(remote);
+    }
+
+    public boolean hasCommand(String remote, String command) throws IOException {
+        Snapshot s = snapshot();
+        NavigableSet<String> index = s.commandIndex.get(remote);
+        return index != null && index.contains(command);
+    }
+
+    /**
+     * @param prefix
+     * @return Remotes whose names start with prefix, in sorted order.
+     * @throws IOException
+     */
+    public List<String> searchRemotes(String prefix) throws IOException {
+        return search(snapshot().remoteIndex, prefix);
+    }
+
+    /**
+     * @param remote
+     * @param prefix
+     * @return Commands of the remote whose names start with prefix, in sorted order.
+     * @throws IOException
+     */
+    public List<String> searchCommands(String remote, String prefix) throws IOException {
+        NavigableSet<String> index = snapshot().commandIndex.get(remote);
+        return index != null ? search(index, prefix) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Writes the snapshot, one "remote TAB command" per line, UTF-8.
+     * @param file
+     * @throws IOException
+     */
+    public void save(File file) throws IOException {
+        Snapshot s = snapshot();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            s.commands.entrySet().forEach((entry) -> {
+                if (entry.getValue().length == 0)
+                    writer.println(entry.getKey());
+                for (String command : entry.getValue())
+                    writer.println(entry.getKey() + separator + command);
+            });
+            if (writer.checkError())
+                throw new IOException("Could not write " + file);
+        }
+    }
+
+    /**
+     * Replaces the snapshot by the content of a file written by save.
+     * Its age is taken from the modification time of the file.
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void load(File file) throws IOException {
+        Map<String, List<String>> lists = new LinkedHashMap<>(16);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty())
+                    continue;
+                int pos = line.indexOf(separator);
+                String remote = pos >= 0 ? line.substring(0, pos) : line;
+                List<String> list = lists.computeIfAbsent(remote, (r) -> new ArrayList<>(16));
+                if (pos >= 0)
+                    list.add(line.substring(pos + 1));
+            }
+        }
+        Map<String, String[]> map = new LinkedHashMap<>(lists.size());
+        lists.entrySet().forEach((entry) -> {
+            map.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+        });
+        snapshot = new Snapshot(map, file.lastModified());
+    }
+
+    @Override
+    public boolean sendIrCommand(String remote, String command, int count, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
+        return sender.sendIrCommand(remote, command, count, transmitter);
+    }
+
+    @Override
+    public boolean sendIrCommandRepeat(String remote, String command, Transmitter transmitter) throws IOException, NoSuchTransmitterException {
+        return sender.sendIrCommandRepeat(remote, command, transmitter);
+    }
+
+    @Override
+    public Transmitter getTransmitter() {
+        return sender.getTransmitter();
+    }
+
+    private Snapshot snapshot() throws IOException {
+        Snapshot s = snapshot;
+        if (s == null || (maxAge > 0 && System.currentTimeMillis() - s.time > maxAge)) {
+            synchronized (this) {
+                if (snapshot == s)
+                    refresh();
+                s = snapshot;
+            }
+        }
+        return s;
+    }
+
+    private static List<String> search(NavigableSet<String> index, String prefix) {
+        return new ArrayList<>(index.subSet(prefix, true, prefix + Character.MAX_VALUE, true));
+    }
+
+    private static class Snapshot {
+        private final String[] remotes;
+        private final Map<String, String[]> commands;
+        private final NavigableSet<String> remoteIndex;
+        private final Map<String, NavigableSet<String>> commandIndex;
+        private final long time;
+
+        Snapshot(Map<String, String[]> commands, long time) {
+            this.commands = Collections.unmodifiableMap(commands);
+            this.remotes = commands.keySet().toArray(new String[0]);
+            this.remoteIndex = Collections.unmodifiableNavigableSet(new TreeSet<>(commands.keySet()));
+            Map<String, NavigableSet<String>> map = new HashMap<>(commands.size() * 2);
+            commands.entrySet().forEach((entry) -> {
+                NavigableSet<String> set = new TreeSet<>();
+                Collections.addAll(set, entry.getValue());
+                map.put(entry.getKey(), Collections.unmodifiableNavigableSet(set));
+            });
+            this.commandIndex = map;
+            this.time = time;
+        }
+    }
+}
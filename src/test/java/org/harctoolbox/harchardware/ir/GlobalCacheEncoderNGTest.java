@@ -0,0 +1,56 @@
+package org.harctoolbox.harchardware.ir;
+
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class GlobalCacheEncoderNGTest {
+
+    private static final int[] intro = { 347, 173, 22, 22, 22, 65, 22, 22, 22, 65, 22, 1700 };
+    private static final int[] repeat = { 347, 87, 22, 3692 };
+
+    public GlobalCacheEncoderNGTest() {
+    }
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public void tearDownClass() throws Exception {
+    }
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+    }
+
+    @AfterMethod
+    public void tearDownMethod() throws Exception {
+    }
+
+    /**
+     * Test of encode method, of class GlobalCacheEncoder.
+     * @throws org.harctoolbox.harchardware.ir.NoSuchTransmitterException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testEncode() throws NoSuchTransmitterException {
+        System.out.println("encode");
+        GlobalCacheEncoder instance = new GlobalCacheEncoder(16);
+        String result = instance.encode(38000L, intro, repeat, 1, 1, 1, 5, false).toString();
+        assertEquals(result, "sendir,1:1,5,38000,1,13,347,173,22,22,22,65,22,22,22,65,22,1700,347,87,22,3692");
+        result = instance.encode(38000L, intro, repeat, 3, 4, 2, 65537, true).toString();
+        assertEquals(result, "sendir,4:2,1,38000,3,13,347,173,22,22,22,65BC,22,1700,347,87,22,3692");
+        assertEquals(instance.getLength(), result.length());
+        instance.append('\r');
+        assertEquals(instance.getLength(), result.length() + 1);
+        try {
+            instance.encode(38000L, intro, repeat, 1, 1, 4, 0, false);
+            fail();
+        } catch (NoSuchTransmitterException ex) {
+        }
+    }
+}
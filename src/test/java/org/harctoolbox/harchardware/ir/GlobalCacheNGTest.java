@@ -45,4 +45,26 @@ public class GlobalCacheNGTest {
         IrSignal result = GlobalCache.parse(gcString);
         assertTrue(result.approximatelyEquals(expResult));
     }
+
+    /**
+     * Test of parse method, of class GlobalCache, with compressed and uncompressed forms.
+     * @throws org.harctoolbox.ircore.InvalidArgumentException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testParseCompressed() throws InvalidArgumentException {
+        System.out.println("parseCompressed");
+        String gcString = "sendir,1:1,1,38381,1,69,347,173,22,22,22,22,22,65,22,65,22,22,22,22,22,22,22,22,22,22,22,65,22,22,22,22,22,22,22,65,22,22,22,22,22,22,22,22,22,22,22,65,22,65,22,65,22,22,22,22,22,65,22,65,22,65,22,22,22,22,22,22,22,65,22,65,22,1700,347,87,22,3692";
+        String compressed = "sendir,1:1,1,38381,1,69,347,173,22,22B,22,65CBBBBBCBBBCBBBBBCCCBBCCCBBBCC,22,1700,347,87,22,3692\r";
+        IrSignal expResult = GlobalCache.parse(gcString);
+        IrSignal result = GlobalCache.parse(compressed);
+        assertTrue(result.approximatelyEquals(expResult));
+        assertEquals(result.getRepeatLength(), 4);
+        assertNull(GlobalCache.parse("completeir,1:1,1"));
+        try {
+            GlobalCache.parse("sendir,1:1,1,38000,1,1,22,22,C");
+            fail();
+        } catch (InvalidArgumentException ex) {
+        }
+    }
 }
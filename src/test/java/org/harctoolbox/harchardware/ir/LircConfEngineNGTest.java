@@ -0,0 +1,172 @@
+package org.harctoolbox.harchardware.ir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import org.harctoolbox.ircore.InvalidArgumentException;
+import org.harctoolbox.ircore.IrSignal;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LircConfEngineNGTest {
+
+    private static final String lircdConf
+            = "# NEC, the usual way\n"
+            + "begin remote\n"
+            + "  name  tv\n"
+            + "  bits           16\n"
+            + "  flags SPACE_ENC|CONST_LENGTH\n"
+            + "  eps            30\n"
+            + "  aeps          100\n"
+            + "  header       9000  4500\n"
+            + "  one           560  1690\n"
+            + "  zero          560   560\n"
+            + "  ptrail        560\n"
+            + "  repeat       9000  2250\n"
+            + "  pre_data_bits   16\n"
+            + "  pre_data       0x20DF\n"
+            + "  gap          108000\n"
+            + "      begin codes\n"
+            + "          KEY_POWER                0x10EF   # comment\n"
+            + "          KEY_MUTE                 0x906F\n"
+            + "      end codes\n"
+            + "end remote\n"
+            + "\n"
+            + "begin remote\n"
+            + "  name  learned\n"
+            + "  flags RAW_CODES\n"
+            + "  gap 30000\n"
+            + "  begin raw_codes\n"
+            + "    name one\n"
+            + "      100 200 300\n"
+            + "      400 500\n"
+            + "  end raw_codes\n"
+            + "end remote\n"
+            + "\n"
+            + "begin remote\n"
+            + "  name  lead\n"
+            + "  bits  8\n"
+            + "  flags SPACE_ENC|REPEAT_HEADER\n"
+            + "  header       3000  1500\n"
+            + "  plead         400\n"
+            + "  one           400  1200\n"
+            + "  zero          400   400\n"
+            + "  ptrail        400\n"
+            + "  repeat       2000  1000\n"
+            + "  gap         40000\n"
+            + "  begin codes\n"
+            + "    KEY_OK 0xA5\n"
+            + "  end codes\n"
+            + "end remote\n"
+            + "\n"
+            + "begin remote\n"
+            + "  name  rc5\n"
+            + "  bits  6\n"
+            + "  flags RC5|CONST_LENGTH\n"
+            + "  plead         889\n"
+            + "  one           800  1000\n"
+            + "  zero          889   889\n"
+            + "  foot          300   600\n"
+            + "  gap         20000\n"
+            + "  begin codes\n"
+            + "    KEY_1 0x2D\n"
+            + "  end codes\n"
+            + "end remote\n"
+            + "\n"
+            + "begin remote\n"
+            + "  name  rc6\n"
+            + "  bits  16\n"
+            + "  flags RC6|CONST_LENGTH\n"
+            + "  begin codes\n"
+            + "    power 0x0C\n"
+            + "  end codes\n"
+            + "end remote\n";
+
+    public LircConfEngineNGTest() {
+    }
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public void tearDownClass() throws Exception {
+    }
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+    }
+
+    @AfterMethod
+    public void tearDownMethod() throws Exception {
+    }
+
+    /**
+     * Test of parse method, of class LircConfEngine.
+     * @throws java.io.IOException
+     * @throws org.harctoolbox.ircore.InvalidArgumentException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testParse() throws IOException, InvalidArgumentException {
+        System.out.println("parse");
+        Map<String, Map<String, IrSignal>> result = LircConfEngine.parse(new StringReader(lircdConf));
+        assertEquals(result.keySet().toArray(), new String[] { "tv", "learned", "lead", "rc5" });
+        assertEquals(result.get("tv").keySet().toArray(), new String[] { "KEY_POWER", "KEY_MUTE" });
+        IrSignal power = result.get("tv").get("KEY_POWER");
+        assertEquals(power.getIntroLength(), 68);
+        assertEquals(power.getRepeatLength(), 4);
+        IrSignal one = result.get("learned").get("one");
+        assertEquals(one.getIntroLength(), 0);
+        assertEquals(one.getRepeatLength(), 6);
+        assertEquals(one.getRepeatSequence().toInts(), new int[] { 100, 200, 300, 400, 500, 30000 });
+    }
+
+    /**
+     * Test of parse method, of class LircConfEngine, comparing with the durations lircd sends.
+     * @throws java.io.IOException
+     * @throws org.harctoolbox.ircore.InvalidArgumentException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testRender() throws IOException, InvalidArgumentException {
+        System.out.println("render");
+        Map<String, Map<String, IrSignal>> result = LircConfEngine.parse(new StringReader(lircdConf));
+
+        IrSignal power = result.get("tv").get("KEY_POWER");
+        assertEquals(power.getIntroSequence().toInts(), new int[] {
+            9000, 4500, 560, 560, 560, 560, 560, 1690, 560, 560, 560, 560, 560, 560, 560, 560, 560, 560,
+            560, 1690, 560, 1690, 560, 560, 560, 1690, 560, 1690, 560, 1690, 560, 1690, 560, 1690, 560, 560,
+            560, 560, 560, 560, 560, 1690, 560, 560, 560, 560, 560, 560, 560, 560, 560, 1690, 560, 1690,
+            560, 1690, 560, 560, 560, 1690, 560, 1690, 560, 1690, 560, 1690, 560, 40020 });
+        assertEquals(power.getRepeatSequence().toInts(), new int[] { 9000, 2250, 560, 96190 });
+
+        IrSignal ok = result.get("lead").get("KEY_OK");
+        assertEquals(ok.getIntroSequence().toInts(), new int[] {
+            3000, 1500, 800, 1200, 400, 400, 400, 1200, 400, 400, 400, 400, 400, 1200, 400, 400, 400, 1200, 400, 40000 });
+        assertEquals(ok.getRepeatSequence().toInts(), new int[] { 3000, 1500, 2400, 1000, 400, 40000 });
+
+        IrSignal key1 = result.get("rc5").get("KEY_1");
+        assertEquals(key1.getIntroLength(), 0);
+        assertEquals(key1.getRepeatSequence().toInts(), new int[] { 889, 1000, 1689, 1889, 800, 1000, 1689, 1889, 800, 600, 300, 7455 });
+    }
+
+    /**
+     * Test of parse method, of class LircConfEngine, with erroneous input.
+     * @throws java.io.IOException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testParseError() throws IOException {
+        System.out.println("parseError");
+        try {
+            LircConfEngine.parse(new StringReader("begin remote\n name x\n bits 8\n begin codes\n a 0xZZ\n end codes\nend remote\n"));
+            fail();
+        } catch (InvalidArgumentException ex) {
+        }
+    }
+}
@@ -112,4 +112,21 @@ public class Mode2ParserNGTest {
             fail();
         }
     }
+
+    /**
+     * Test of readDuration method, of class Mode2Parser.
+     * @throws java.io.IOException
+     * @throws java.text.ParseException
+     */
+    @Test
+    public void testReadDuration() throws IOException, ParseException {
+        System.out.println("readDuration");
+        StringReader reader = new StringReader("# comment\npulse 2\n\nspace 3\nspace 0\ntimeout 100000\n");
+        Mode2Parser instance = new Mode2Parser(reader, Mode2Parser.DEFAULT_THRESHOLD);
+        assertEquals(instance.readDuration(), 2);
+        assertEquals(instance.readDuration(), -3);
+        assertEquals(instance.readDuration(), -100000);
+        assertEquals(instance.readDuration(), 0);
+        assertFalse(instance.isValid());
+    }
 }
@@ -0,0 +1,131 @@
+package org.harctoolbox.harchardware.ir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.testng.Assert.*;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RemoteCommandCatalogNGTest {
+
+    private static class Device implements IRemoteCommandIrSender {
+        private int queries = 0;
+        private boolean failing = false;
+
+        @Override
+        public String[] getRemotes() {
+            queries++;
+            return new String[] { "tv", "amp", "tuner" };
+        }
+
+        @Override
+        public String[] getCommands(String remote) {
+            queries++;
+            if (failing)
+                return null;
+            return remote.equals("tuner") ? new String[0] : new String[] { "power_on", "power_off", "volume_up", "mute" };
+        }
+
+        @Override
+        public boolean sendIrCommand(String remote, String command, int count, Transmitter transmitter) {
+            return true;
+        }
+
+        @Override
+        public boolean sendIrCommandRepeat(String remote, String command, Transmitter transmitter) {
+            return true;
+        }
+
+        @Override
+        public Transmitter getTransmitter() {
+            return null;
+        }
+    }
+
+    public RemoteCommandCatalogNGTest() {
+    }
+
+    @BeforeClass
+    public void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public void tearDownClass() throws Exception {
+    }
+
+    @BeforeMethod
+    public void setUpMethod() throws Exception {
+    }
+
+    @AfterMethod
+    public void tearDownMethod() throws Exception {
+    }
+
+    /**
+     * Test of getRemotes, getCommands, and the searches, of class RemoteCommandCatalog.
+     * @throws java.io.IOException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testLookup() throws IOException {
+        System.out.println("lookup");
+        Device device = new Device();
+        RemoteCommandCatalog instance = new RemoteCommandCatalog(device);
+        assertEquals(instance.getRemotes(), new String[] { "tv", "amp", "tuner" });
+        assertEquals(device.queries, 4);
+        assertEquals(instance.getCommands("tv"), new String[] { "power_on", "power_off", "volume_up", "mute" });
+        assertNull(instance.getCommands("vcr"));
+        assertTrue(instance.hasCommand("amp", "mute"));
+        assertFalse(instance.hasCommand("tuner", "mute"));
+        assertEquals(instance.searchRemotes("t"), Arrays.asList("tuner", "tv"));
+        assertEquals(instance.searchCommands("tv", "power"), Arrays.asList("power_off", "power_on"));
+        assertTrue(instance.searchCommands("vcr", "power").isEmpty());
+        assertEquals(device.queries, 4);
+        instance.refresh();
+        assertEquals(device.queries, 8);
+    }
+
+    /**
+     * Test of refresh method, of class RemoteCommandCatalog, with a device failing to list the commands.
+     * @throws java.io.IOException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testRefreshFailure() throws IOException {
+        System.out.println("refreshFailure");
+        Device device = new Device();
+        RemoteCommandCatalog instance = new RemoteCommandCatalog(device);
+        instance.refresh();
+        device.failing = true;
+        try {
+            instance.refresh();
+            fail();
+        } catch (IOException ex) {
+        }
+        assertEquals(instance.getCommands("tv"), new String[] { "power_on", "power_off", "volume_up", "mute" });
+    }
+
+    /**
+     * Test of save and load, of class RemoteCommandCatalog.
+     * @throws java.io.IOException
+     */
+    @Test
+    @SuppressWarnings("UseOfSystemOutOrSystemErr")
+    public void testSaveLoad() throws IOException {
+        System.out.println("saveLoad");
+        File file = File.createTempFile("catalog", ".txt");
+        file.deleteOnExit();
+        new RemoteCommandCatalog(new Device()).save(file);
+        Device device = new Device();
+        RemoteCommandCatalog instance = new RemoteCommandCatalog(device);
+        instance.load(file);
+        assertEquals(instance.getRemotes(), new String[] { "tv", "amp", "tuner" });
+        assertEquals(instance.getCommands("tuner").length, 0);
+        assertEquals(instance.getCommands("amp"), new String[] { "power_on", "power_off", "volume_up", "mute" });
+        assertEquals(device.queries, 0);
+    }
+}